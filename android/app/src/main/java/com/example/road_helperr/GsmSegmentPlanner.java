@@ -0,0 +1,312 @@
+package com.example.road_helperr;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plans how an SMS body is laid out into PDUs.
+ *
+ * A single character outside the GSM 03.38 alphabet (an Arabic name, an
+ * emoji) switches the whole message to UCS-2, which fits 70 instead of 160
+ * characters per SMS. The planner counts segments exactly for both encodings
+ * and compares a few layouts of the same text (as is, transliterated, or with
+ * the non-GSM lines moved to their own message) to pick the one with the
+ * fewest PDUs. Plain Java only, so it can be tested on a JVM.
+ */
+final class GsmSegmentPlanner {
+
+    enum Encoding {
+        GSM_7,
+        UCS_2
+    }
+
+    // Septets / UTF-16 units per PDU; concatenated parts lose room to the UDH
+    static final int GSM_SINGLE = 160;
+    static final int GSM_MULTI = 153;
+    static final int UCS_SINGLE = 70;
+    static final int UCS_MULTI = 67;
+
+    // GSM 03.38 default alphabet; index 27 is the escape to the extension table
+    private static final String GSM_BASIC = "@£$¥èéùìòÇ\nØø\rÅåΔ_ΦΓΛΩΠΨΣΘΞ\u001BÆæßÉ !\"#¤%&'()*+,-./0123456789:;<=>?"
+            + "¡ABCDEFGHIJKLMNOPQRSTUVWXYZÄÖÑÜ§¿abcdefghijklmnopqrstuvwxyzäöñüà";
+    // Characters reached through the escape; each costs two septets
+    private static final String GSM_EXTENSION = "\f^{}\\[~]|€";
+
+    private static final Map<Character, String> TRANSLITERATIONS = new HashMap<>();
+
+    static {
+        // Typographic lookalikes
+        for (char c : "‘’‚‛′´`".toCharArray()) {
+            TRANSLITERATIONS.put(c, "'");
+        }
+        for (char c : "“”„‟″«»".toCharArray()) {
+            TRANSLITERATIONS.put(c, "\"");
+        }
+        for (char c : "‐‑‒–—―−".toCharArray()) {
+            TRANSLITERATIONS.put(c, "-");
+        }
+        for (char c : "\u00A0\u2002\u2003\u2007\u2009\u202F\t".toCharArray()) {
+            TRANSLITERATIONS.put(c, " ");
+        }
+        // Invisible direction marks and joiners are dropped
+        for (char c : "\u200B\u200C\u200D\u200E\u200F\u202A\u202B\u202C\u202D\u202E\u2066\u2067\u2068\u2069\uFEFF"
+                .toCharArray()) {
+            TRANSLITERATIONS.put(c, "");
+        }
+        TRANSLITERATIONS.put('…', "...");
+        TRANSLITERATIONS.put('•', "*");
+        TRANSLITERATIONS.put('°', " deg");
+        TRANSLITERATIONS.put('،', ",");
+        TRANSLITERATIONS.put('؛', ";");
+        TRANSLITERATIONS.put('؟', "?");
+        TRANSLITERATIONS.put('٪', "%");
+        TRANSLITERATIONS.put('٫', ".");
+        for (char d = 0; d < 10; d++) {
+            // Arabic-Indic and extended Arabic-Indic digits
+            TRANSLITERATIONS.put((char) ('٠' + d), String.valueOf((char) ('0' + d)));
+            TRANSLITERATIONS.put((char) ('۰' + d), String.valueOf((char) ('0' + d)));
+        }
+        // Arabic letters, Egyptian-style romanisation
+        String[][] arabic = {
+                {"ا", "a"}, {"أ", "a"}, {"إ", "e"}, {"آ", "a"}, {"ٱ", "a"},
+                {"ب", "b"}, {"ت", "t"}, {"ث", "th"}, {"ج", "g"}, {"ح", "h"},
+                {"خ", "kh"}, {"د", "d"}, {"ذ", "z"}, {"ر", "r"}, {"ز", "z"},
+                {"س", "s"}, {"ش", "sh"}, {"ص", "s"}, {"ض", "d"}, {"ط", "t"},
+                {"ظ", "z"}, {"ع", "a"}, {"غ", "gh"}, {"ف", "f"}, {"ق", "q"},
+                {"ك", "k"}, {"ل", "l"}, {"م", "m"}, {"ن", "n"}, {"ه", "h"},
+                {"و", "w"}, {"ي", "y"}, {"ى", "a"}, {"ة", "a"}, {"ء", "'"},
+                {"ؤ", "o"}, {"ئ", "e"}, {"\u0640", ""}
+        };
+        for (String[] mapping : arabic) {
+            TRANSLITERATIONS.put(mapping[0].charAt(0), mapping[1]);
+        }
+        // Harakat (short vowel marks) are dropped
+        for (char c = '\u064B'; c <= '\u0652'; c++) {
+            TRANSLITERATIONS.put(c, "");
+        }
+    }
+
+    /** Encoding and exact PDU count of one SMS body. */
+    static final class Segmentation {
+        final Encoding encoding;
+        // Septets for GSM-7, UTF-16 code units for UCS-2
+        final int units;
+        final int parts;
+
+        Segmentation(Encoding encoding, int units, int parts) {
+            this.encoding = encoding;
+            this.units = units;
+            this.parts = parts;
+        }
+
+        @Override
+        public String toString() {
+            return encoding + "/" + units + "/" + parts;
+        }
+    }
+
+    /** One or more SMS bodies that together carry the message. */
+    static final class Layout {
+        static final String AS_IS = "as-is";
+        static final String SPLIT = "split";
+        static final String TRANSLITERATED = "transliterated";
+
+        final String kind;
+        final List<String> messages;
+        final List<Segmentation> segmentations;
+        final int totalParts;
+
+        Layout(String kind, List<String> messages) {
+            this.kind = kind;
+            this.messages = Collections.unmodifiableList(messages);
+            List<Segmentation> list = new ArrayList<>(messages.size());
+            int parts = 0;
+            for (String message : messages) {
+                Segmentation segmentation = segment(message);
+                list.add(segmentation);
+                parts += segmentation.parts;
+            }
+            this.segmentations = Collections.unmodifiableList(list);
+            this.totalParts = parts;
+        }
+
+        @Override
+        public String toString() {
+            return kind + " " + segmentations + " = " + totalParts + " PDUs";
+        }
+    }
+
+    private GsmSegmentPlanner() {
+    }
+
+    static boolean isGsm7(char c) {
+        return c != '\u001B' && (GSM_BASIC.indexOf(c) >= 0 || GSM_EXTENSION.indexOf(c) >= 0);
+    }
+
+    static boolean isGsm7(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!isGsm7(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Exact encoding and part count, as the platform would send the text. */
+    static Segmentation segment(CharSequence text) {
+        if (isGsm7(text)) {
+            int septets = 0;
+            for (int i = 0; i < text.length(); i++) {
+                septets += septetsOf(text.charAt(i));
+            }
+            if (septets <= GSM_SINGLE) {
+                return new Segmentation(Encoding.GSM_7, septets, 1);
+            }
+            // An escape and its character never straddle two parts
+            int parts = 1;
+            int used = 0;
+            for (int i = 0; i < text.length(); i++) {
+                int cost = septetsOf(text.charAt(i));
+                if (used + cost > GSM_MULTI) {
+                    parts++;
+                    used = 0;
+                }
+                used += cost;
+            }
+            return new Segmentation(Encoding.GSM_7, septets, parts);
+        }
+
+        int units = text.length();
+        if (units <= UCS_SINGLE) {
+            return new Segmentation(Encoding.UCS_2, units, 1);
+        }
+        // Surrogate pairs (emoji) are never split across parts
+        int parts = 1;
+        int used = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int cost = Character.isHighSurrogate(text.charAt(i)) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1)) ? 2 : 1;
+            if (used + cost > UCS_MULTI) {
+                parts++;
+                used = 0;
+            }
+            used += cost;
+            i += cost - 1;
+        }
+        return new Segmentation(Encoding.UCS_2, units, parts);
+    }
+
+    /**
+     * Best-effort mapping of non-GSM characters to GSM ones: typographic
+     * punctuation, accents and Arabic script. Characters without a mapping
+     * (e.g. emoji) are left in place.
+     */
+    static String transliterate(CharSequence text) {
+        StringBuilder out = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (isGsm7(c)) {
+                out.append(c);
+                continue;
+            }
+            String mapped = TRANSLITERATIONS.get(c);
+            if (mapped != null) {
+                out.append(mapped);
+                continue;
+            }
+            // Accented Latin letters outside the GSM set lose their accent (á -> a)
+            String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+            if (decomposed.length() > 1 && isGsm7(decomposed.charAt(0))) {
+                out.append(decomposed.charAt(0));
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    /** Trims every line, drops blank lines and surrounding whitespace; the content is unchanged. */
+    static String compact(CharSequence text) {
+        StringBuilder out = new StringBuilder(text.length());
+        for (String line : text.toString().split("\n")) {
+            String trimmed = line.trim().replaceAll(" {2,}", " ");
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (out.length() > 0) {
+                out.append('\n');
+            }
+            out.append(trimmed);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Picks the layout with the fewest PDUs. Ties go to fewer messages and
+     * then to the least invasive layout: as is, split, transliterated.
+     */
+    static Layout plan(String text, boolean allowSplit, boolean allowTransliteration) {
+        String compacted = compact(text);
+        Layout best = new Layout(Layout.AS_IS, Collections.singletonList(compacted));
+        if (best.segmentations.get(0).encoding == Encoding.GSM_7) {
+            return best;
+        }
+
+        if (allowSplit) {
+            Layout split = split(compacted);
+            if (split != null && isBetter(split, best)) {
+                best = split;
+            }
+        }
+        if (allowTransliteration) {
+            String transliterated = transliterate(compacted);
+            if (!transliterated.equals(compacted)) {
+                Layout layout = new Layout(Layout.TRANSLITERATED, Collections.singletonList(transliterated));
+                if (isBetter(layout, best)) {
+                    best = layout;
+                }
+            }
+        }
+        return best;
+    }
+
+    // Non-GSM lines go into their own message, so the rest can stay GSM-7
+    private static Layout split(String text) {
+        StringBuilder gsm = new StringBuilder();
+        StringBuilder other = new StringBuilder();
+        boolean otherFirst = false;
+        for (String line : text.split("\n")) {
+            StringBuilder target = isGsm7(line) ? gsm : other;
+            if (gsm.length() == 0 && other.length() == 0) {
+                otherFirst = target == other;
+            }
+            if (target.length() > 0) {
+                target.append('\n');
+            }
+            target.append(line);
+        }
+        if (gsm.length() == 0 || other.length() == 0) {
+            return null;
+        }
+        List<String> messages = new ArrayList<>(2);
+        // Keep the message holding the first line first
+        messages.add(otherFirst ? other.toString() : gsm.toString());
+        messages.add(otherFirst ? gsm.toString() : other.toString());
+        return new Layout(Layout.SPLIT, messages);
+    }
+
+    private static boolean isBetter(Layout candidate, Layout current) {
+        if (candidate.totalParts != current.totalParts) {
+            return candidate.totalParts < current.totalParts;
+        }
+        return candidate.messages.size() < current.messages.size();
+    }
+
+    private static int septetsOf(char c) {
+        return GSM_EXTENSION.indexOf(c) >= 0 ? 2 : 1;
+    }
+}
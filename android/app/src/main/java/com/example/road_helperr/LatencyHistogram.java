@@ -0,0 +1,125 @@
+package com.example.road_helperr;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear latency histogram in milliseconds.
+ *
+ * Values below 16 ms get their own bucket; above that every power of two is
+ * split into 8 buckets, so any recorded value is off by at most 12.5%.
+ * Recording is a few atomic increments and never allocates, so it is safe to
+ * call from broadcast receivers and sender threads at the same time.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values below this are recorded exactly
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+    // Enough for values up to 2^34 ms; anything larger lands in the last bucket
+    private static final int BUCKETS = 256;
+
+    /** Point-in-time copy of a histogram. */
+    static final class Snapshot {
+        final long[] counts;
+        final long count;
+        final long sumMs;
+        final long maxMs;
+
+        Snapshot(long[] counts, long count, long sumMs, long maxMs) {
+            this.counts = counts;
+            this.count = count;
+            this.sumMs = sumMs;
+            this.maxMs = maxMs;
+        }
+
+        /** Upper bound of the bucket holding the given percentile (0-100), or -1 if empty. */
+        long percentile(double percentile) {
+            long total = 0;
+            for (long bucketCount : counts) {
+                total += bucketCount;
+            }
+            if (total == 0) {
+                return -1;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), maxMs);
+                }
+            }
+            return maxMs;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("count", count);
+            map.put("meanMs", count > 0 ? sumMs / count : 0);
+            map.put("p50Ms", percentile(50));
+            map.put("p90Ms", percentile(90));
+            map.put("p99Ms", percentile(99));
+            map.put("maxMs", maxMs);
+            return map;
+        }
+    }
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMs = new AtomicLong();
+    private final AtomicLong maxMs = new AtomicLong();
+
+    void record(long valueMs) {
+        if (valueMs < 0) {
+            return;
+        }
+        counts.incrementAndGet(indexOf(valueMs));
+        count.incrementAndGet();
+        sumMs.addAndGet(valueMs);
+        long max;
+        while (valueMs > (max = maxMs.get()) && !maxMs.compareAndSet(max, valueMs)) {
+            // Lost the race to a concurrent record; re-read and try again
+        }
+    }
+
+    long count() {
+        return count.get();
+    }
+
+    /**
+     * Copies the histogram, optionally clearing it. With reset, values
+     * recorded concurrently land in either this snapshot or the next one.
+     */
+    Snapshot snapshot(boolean reset) {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = reset ? counts.getAndSet(i, 0) : counts.get(i);
+        }
+        if (reset) {
+            return new Snapshot(copy, count.getAndSet(0), sumMs.getAndSet(0), maxMs.getAndSet(0));
+        }
+        return new Snapshot(copy, count.get(), sumMs.get(), maxMs.get());
+    }
+
+    static int indexOf(long valueMs) {
+        if (valueMs < LINEAR_LIMIT) {
+            return (int) valueMs;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(valueMs);
+        int subBucket = (int) (valueMs >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return Math.min(BUCKETS - 1, LINEAR_LIMIT + (exponent - 4) * SUB_BUCKETS + subBucket);
+    }
+
+    static long upperBound(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int exponent = (index - LINEAR_LIMIT) / SUB_BUCKETS + 4;
+        int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (subBucket + 1) * width - 1;
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.road_helperr;
+
+import android.os.SystemClock;
+
+/**
+ * Detects N power button presses within a time window.
+ *
+ * Works purely on timestamps from a monotonic clock: the last N accepted
+ * presses sit in a preallocated ring and a sequence triggers when the oldest
+ * of them is still inside the window, so nothing is scheduled and nothing is
+ * allocated per event. Presses closer together than the minimum spacing are
+ * ignored, and screen broadcasts are debounced before they count: a repeated
+ * state is dropped, as is a transition that follows the previous one too
+ * quickly to be a separate press.
+ *
+ * Only screen-off transitions count as presses. A screen that times out,
+ * is woken and is locked again produces off, on, off with no deliberate
+ * press behind the first off; counting every transition turned that into
+ * an SOS.
+ *
+ * Not thread-safe; feed each instance from one thread.
+ */
+final class MultiPressDetector {
+    interface Clock {
+        long elapsedRealtime();
+    }
+
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long elapsedRealtime() {
+            return SystemClock.elapsedRealtime();
+        }
+    };
+
+    // Results of onPress and onScreenState
+    static final int DEBOUNCED = 0;
+    static final int TOO_SOON = 1;
+    static final int COUNTED = 2;
+    // Counted, but earlier presses had all expired so a new sequence started
+    static final int RESTARTED = 3;
+    static final int TRIGGERED = 4;
+
+    static final int DEFAULT_PRESSES = 3;
+    // Generous, so a panicked user fumbling the button still gets through
+    static final long DEFAULT_WINDOW_MS = 5000;
+    static final long DEFAULT_MIN_SPACING_MS = 100;
+    static final long DEFAULT_DEBOUNCE_MS = 60;
+
+    private static final int SCREEN_UNKNOWN = -1;
+
+    private final int presses;
+    private final long windowMs;
+    private final long minSpacingMs;
+    private final long debounceMs;
+    private final Clock clock;
+
+    // Times of the last accepted presses; head is the next slot to write
+    private final long[] pressTimes;
+    private int head;
+    private int count;
+    private long lastTriggerSpanMs;
+
+    private int screenState = SCREEN_UNKNOWN;
+    private long lastTransitionMs;
+
+    MultiPressDetector() {
+        this(DEFAULT_PRESSES, DEFAULT_WINDOW_MS, DEFAULT_MIN_SPACING_MS, DEFAULT_DEBOUNCE_MS, SYSTEM_CLOCK);
+    }
+
+    MultiPressDetector(int presses, long windowMs, long minSpacingMs, long debounceMs, Clock clock) {
+        if (presses < 1) {
+            throw new IllegalArgumentException("presses must be at least 1");
+        }
+        this.presses = presses;
+        this.windowMs = windowMs;
+        this.minSpacingMs = minSpacingMs;
+        this.debounceMs = debounceMs;
+        this.clock = clock;
+        this.pressTimes = new long[presses];
+    }
+
+    /** A raw press, as reported by a key event. */
+    int onPress() {
+        return press(clock.elapsedRealtime());
+    }
+
+    /**
+     * A screen on/off broadcast. Each real transition to off is one press of
+     * the power button; transitions to on only update the debounce state.
+     */
+    int onScreenState(boolean screenOn) {
+        long now = clock.elapsedRealtime();
+        int state = screenOn ? 1 : 0;
+        if (state == screenState) {
+            return DEBOUNCED;
+        }
+        // The second half of an on/off pair fired by a single press
+        boolean pairHalf = screenState != SCREEN_UNKNOWN && now - lastTransitionMs < debounceMs;
+        screenState = state;
+        lastTransitionMs = now;
+        return pairHalf || screenOn ? DEBOUNCED : press(now);
+    }
+
+    /** Accepted presses still inside the window. */
+    int pendingPresses() {
+        long now = clock.elapsedRealtime();
+        int pending = 0;
+        for (int i = 0; i < count; i++) {
+            if (now - pressTimes[i] <= windowMs) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+
+    /** Time from the first to the last press of the sequence that last triggered. */
+    long lastTriggerSpanMs() {
+        return lastTriggerSpanMs;
+    }
+
+    int presses() {
+        return presses;
+    }
+
+    void reset() {
+        head = 0;
+        count = 0;
+    }
+
+    private int press(long now) {
+        int result = COUNTED;
+        if (count > 0) {
+            long sinceLast = now - pressTimes[(head + presses - 1) % presses];
+            if (sinceLast < minSpacingMs) {
+                return TOO_SOON;
+            }
+            if (sinceLast > windowMs) {
+                reset();
+                result = RESTARTED;
+            }
+        }
+
+        pressTimes[head] = now;
+        head = (head + 1) % presses;
+        if (count < presses) {
+            count++;
+        }
+
+        // Once the ring is full, head points at the oldest of the last N presses
+        if (count == presses && now - pressTimes[head] <= windowMs) {
+            lastTriggerSpanMs = now - pressTimes[head];
+            reset();
+            return TRIGGERED;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.road_helperr;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.shounakmulay.telephony.utils.SosDataCodec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sends an SOS straight from a native trigger, without waiting for Dart.
+ *
+ * Dart stages what it would otherwise gather at trigger time: the formatted
+ * contact numbers, which of them run the app, the sender name and the message
+ * template. Location, battery and the rendered body come from the
+ * {@link SosSnapshotProvider}, which keeps them current in the background.
+ * The profile is kept in memory and in preferences, so a triple press goes
+ * from detection to the dispatch engine in one call even when the activity or
+ * Flutter engine is gone. Flutter is told about the dispatched alert
+ * afterwards, if it is running.
+ *
+ * App contacts get the binary SOS data SMS; the dispatcher sends a contact
+ * the text message instead as soon as their data SMS fails.
+ */
+final class NativeSosExecutor {
+    private static final String TAG = "NativeSosExecutor";
+    private static final String PREFS_NAME = "sos_native_profile";
+    private static final String KEY_CONTACTS = "contacts";
+    private static final String KEY_APP_PEERS = "appPeers";
+    private static final String KEY_SENDER_NAME = "senderName";
+    private static final String KEY_TEMPLATE = "template";
+
+    // Same payload classes as SOSService, so a Dart-side trigger of the same alert coalesces
+    static final String PAYLOAD_CLASS_TEXT = "sos";
+    static final String PAYLOAD_CLASS_DATA = "sos-data";
+
+    // Placeholders understood in the staged template
+    private static final String[] PLACEHOLDERS = {"{name}", "{latitude}", "{longitude}", "{battery}"};
+
+    private static final String DEFAULT_TEMPLATE = "SOS! {name} needs help!\n"
+            + "Current coordinates: {latitude}, {longitude}\n"
+            + "Battery: {battery}%\n";
+
+    private static volatile NativeSosExecutor instance;
+
+    private final SharedPreferences preferences;
+    private final SmsDispatcher dispatcher;
+    private final SosSnapshotProvider snapshotProvider;
+
+    private List<String> contacts;
+    private Set<String> appPeers;
+    private String senderName;
+
+    static NativeSosExecutor getInstance(Context context) {
+        NativeSosExecutor result = instance;
+        if (result == null) {
+            synchronized (NativeSosExecutor.class) {
+                result = instance;
+                if (result == null) {
+                    result = new NativeSosExecutor(context.getApplicationContext());
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private NativeSosExecutor(Context context) {
+        this.preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.dispatcher = SmsDispatcher.getInstance(context);
+        load();
+        this.snapshotProvider = new SosSnapshotProvider(context,
+                preferences.getString(KEY_TEMPLATE, DEFAULT_TEMPLATE), senderName);
+        snapshotProvider.start();
+    }
+
+    private synchronized void load() {
+        contacts = split(preferences.getString(KEY_CONTACTS, ""));
+        appPeers = new HashSet<>(split(preferences.getString(KEY_APP_PEERS, "")));
+        senderName = preferences.getString(KEY_SENDER_NAME, "");
+    }
+
+    /** Replaces the staged contacts, app contacts, sender name and template. */
+    synchronized void stageProfile(List<String> contacts, List<String> appPeers, String senderName,
+            String template) {
+        this.contacts = new ArrayList<>(contacts);
+        this.appPeers = new HashSet<>(appPeers);
+        this.senderName = senderName != null ? senderName : "";
+        String messageTemplate = template != null ? template : DEFAULT_TEMPLATE;
+        preferences.edit()
+                .putString(KEY_CONTACTS, join(this.contacts))
+                .putString(KEY_APP_PEERS, join(appPeers))
+                .putString(KEY_SENDER_NAME, this.senderName)
+                .putString(KEY_TEMPLATE, messageTemplate)
+                .apply();
+        snapshotProvider.setProfile(messageTemplate, this.senderName);
+        // Dart stages the profile once location permission is settled
+        snapshotProvider.startLocationUpdates();
+    }
+
+    /** Offers a fix Dart obtained; the snapshot keeps it only if it beats the one it has. */
+    void stageLocation(double latitude, double longitude, float accuracyM, long timeMs) {
+        snapshotProvider.onLocation(latitude, longitude, accuracyM, timeMs);
+    }
+
+    SosSnapshotProvider.Snapshot snapshot() {
+        return snapshotProvider.snapshot();
+    }
+
+    /**
+     * Dispatches the staged SOS and returns a summary for Flutter, or null if
+     * no profile is staged and the caller should fall back to the Dart path.
+     */
+    Map<String, Object> trigger(String source) {
+        List<String> recipients;
+        Set<String> peers;
+        String name;
+        synchronized (this) {
+            if (contacts.isEmpty()) {
+                return null;
+            }
+            recipients = contacts;
+            peers = appPeers;
+            name = senderName;
+        }
+        SosSnapshotProvider.Snapshot snapshot = snapshotProvider.snapshot();
+        boolean hasLocation = snapshot.hasLocation();
+        int battery = snapshot.batteryLevel;
+        long now = System.currentTimeMillis();
+        SosTracer.record(SosTracer.NATIVE_SOS, recipients.size(), hasLocation ? now - snapshot.fixTimeMs : -1,
+                battery);
+
+        String message = snapshot.body;
+        List<String> dataNumbers = new ArrayList<>();
+        List<String> textNumbers = new ArrayList<>();
+        for (String number : recipients) {
+            if (hasLocation && peers.contains(number)) {
+                dataNumbers.add(number);
+            } else {
+                textNumbers.add(number);
+            }
+        }
+
+        SmsRequest.Mode mode = dispatcher.getDefaultMode();
+        List<Long> requestIds = new ArrayList<>(recipients.size());
+        if (!dataNumbers.isEmpty()) {
+            byte[] payload = SosDataCodec.encode(snapshot.latitude, snapshot.longitude, battery, now,
+                    SosDataCodec.senderIdHash(name));
+            long[] ids = dispatcher.dispatchBatch(dispatcher.nextBatchId(), dataNumbers, message, payload,
+                    PAYLOAD_CLASS_DATA, mode);
+            for (long id : ids) {
+                requestIds.add(id);
+            }
+        }
+        if (!textNumbers.isEmpty()) {
+            long[] ids = dispatcher.dispatchBatch(dispatcher.nextBatchId(), textNumbers, message,
+                    PAYLOAD_CLASS_TEXT, mode);
+            for (long id : ids) {
+                requestIds.add(id);
+            }
+        }
+
+        SosForegroundService.onSosDispatched(recipients.size(), now);
+
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("source", source);
+        summary.put("timestampMs", now);
+        summary.put("message", message);
+        summary.put("recipients", new ArrayList<>(recipients));
+        summary.put("dataRecipients", dataNumbers);
+        summary.put("requestIds", requestIds);
+        summary.put("batteryLevel", battery);
+        if (hasLocation) {
+            summary.put("latitude", snapshot.latitude);
+            summary.put("longitude", snapshot.longitude);
+            summary.put("locationTimeMs", snapshot.fixTimeMs);
+            summary.put("accuracyM", (double) snapshot.accuracyM);
+        }
+        return summary;
+    }
+
+    static String render(String template, String name, double latitude, double longitude, int battery) {
+        boolean hasLocation = !Double.isNaN(latitude);
+        String[] values = {
+                name.isEmpty() ? "Emergency User" : name,
+                hasLocation ? String.format(Locale.US, "%.6f", latitude) : "unknown",
+                hasLocation ? String.format(Locale.US, "%.6f", longitude) : "unknown",
+                battery != SosDataCodec.BATTERY_UNKNOWN ? String.valueOf(battery) : "?"
+        };
+        String message = template;
+        for (int i = 0; i < PLACEHOLDERS.length; i++) {
+            message = message.replace(PLACEHOLDERS[i], values[i]);
+        }
+        return message;
+    }
+
+    private static String join(Iterable<String> values) {
+        StringBuilder joined = new StringBuilder();
+        for (String value : values) {
+            if (joined.length() > 0) {
+                joined.append('\n');
+            }
+            joined.append(value);
+        }
+        return joined.toString();
+    }
+
+    private static List<String> split(String joined) {
+        return joined.isEmpty() ? Collections.<String>emptyList() : Arrays.asList(joined.split("\n"));
+    }
+}
@@ -1,20 +1,25 @@
 package com.example.road_helperr;
 
 import android.accessibilityservice.AccessibilityService;
+import android.accessibilityservice.AccessibilityServiceInfo;
+import android.content.Context;
 import android.content.Intent;
-import android.os.Handler;
-import android.os.Looper;
 import android.util.Log;
+import android.view.KeyEvent;
 import android.view.accessibility.AccessibilityEvent;
 
 public class SOSAccessibilityService extends AccessibilityService {
     private static final String TAG = "SOSAccessibilityService";
-    private static final long TRIPLE_PRESS_TIMEOUT = 2000; // 2 seconds
     private static final String POWER_BUTTON_CHANNEL = "com.example.road_helperr/power_button";
+    private static final String PREFS_NAME = "sos_accessibility";
+    private static final String KEY_ARMED = "armed";
 
-    private int powerButtonPressCount = 0;
-    private Handler handler = new Handler(Looper.getMainLooper());
-    private Runnable resetCountRunnable;
+    // The connected instance, so arming changes apply without rebinding
+    private static volatile SOSAccessibilityService connected;
+
+    private final MultiPressDetector pressDetector = new MultiPressDetector();
+    // Alternating up and down, which adjusting the volume never produces
+    private final VolumePatternDetector volumeDetector = new VolumePatternDetector();
 
     @Override
     public void onAccessibilityEvent(AccessibilityEvent event) {
@@ -23,6 +28,30 @@ public class SOSAccessibilityService extends AccessibilityService {
         // This service can be used for additional accessibility features if needed
     }
 
+    /**
+     * Only volume keys get here: the system policy consumes the power key
+     * before key filtering, so triple power presses are left to the screen
+     * broadcast detectors. Keys are never consumed.
+     */
+    @Override
+    protected boolean onKeyEvent(KeyEvent event) {
+        // Only the initial down of a press; auto-repeat of a held key is not a new press
+        if (event.getAction() != KeyEvent.ACTION_DOWN || event.getRepeatCount() != 0) {
+            return false;
+        }
+        int keyCode = event.getKeyCode();
+        if (keyCode == KeyEvent.KEYCODE_VOLUME_UP || keyCode == KeyEvent.KEYCODE_VOLUME_DOWN) {
+            int result = volumeDetector.onKey(keyCode);
+            SosTracer.record(SosTracer.KEY_PRESS, keyCode, result, volumeDetector.pendingPresses());
+            if (result == MultiPressDetector.TRIGGERED) {
+                SosTracer.record(SosTracer.TRIPLE_PRESS, volumeDetector.presses(),
+                        volumeDetector.lastTriggerSpanMs());
+                triggerSOSAlert();
+            }
+        }
+        return false;
+    }
+
     @Override
     public void onInterrupt() {
         Log.d(TAG, "Accessibility service interrupted");
@@ -32,52 +61,78 @@ public class SOSAccessibilityService extends AccessibilityService {
     protected void onServiceConnected() {
         super.onServiceConnected();
         Log.d(TAG, "SOS Accessibility Service connected");
+        // The service outlives the UI, so keep the SOS snapshot warm from here too
+        NativeSosExecutor.getInstance(this);
+        connected = this;
+        applyArming(isArmed(this));
     }
 
     @Override
     public boolean onUnbind(Intent intent) {
         Log.d(TAG, "SOS Accessibility Service unbound");
+        connected = null;
         return super.onUnbind(intent);
     }
 
-    // This method can be called from native code if needed for power button
-    // detection
-    public void onPowerButtonPressed() {
-        powerButtonPressCount++;
-
-        // Cancel previous reset timer
-        if (resetCountRunnable != null) {
-            handler.removeCallbacks(resetCountRunnable);
+    /** Persists whether SOS triggers are armed and applies it to the running service, if any. */
+    static void setArmed(Context context, boolean armed) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putBoolean(KEY_ARMED, armed)
+                .apply();
+        SOSAccessibilityService service = connected;
+        if (service != null) {
+            service.applyArming(armed);
         }
+    }
 
-        // Set new reset timer
-        resetCountRunnable = new Runnable() {
-            @Override
-            public void run() {
-                powerButtonPressCount = 0;
-            }
-        };
-        handler.postDelayed(resetCountRunnable, TRIPLE_PRESS_TIMEOUT);
-
-        Log.d(TAG, "Power button press count: " + powerButtonPressCount);
-
-        // Check for triple press
-        if (powerButtonPressCount >= 3) {
-            Log.d(TAG, "Triple power button press detected!");
-            powerButtonPressCount = 0;
+    private static boolean isArmed(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).getBoolean(KEY_ARMED, true);
+    }
 
-            // Cancel reset timer
-            if (resetCountRunnable != null) {
-                handler.removeCallbacks(resetCountRunnable);
-            }
+    /**
+     * Narrows the subscription to what the current state needs. No event types
+     * are ever needed; key filtering is only requested while armed, since it
+     * routes every key press on the device through this process.
+     */
+    private void applyArming(boolean armed) {
+        AccessibilityServiceInfo info = getServiceInfo();
+        if (info == null) {
+            return;
+        }
+        info.eventTypes = 0;
+        info.packageNames = new String[]{getPackageName()};
+        if (armed) {
+            info.flags |= AccessibilityServiceInfo.FLAG_REQUEST_FILTER_KEY_EVENTS;
+        } else {
+            info.flags &= ~AccessibilityServiceInfo.FLAG_REQUEST_FILTER_KEY_EVENTS;
+        }
+        setServiceInfo(info);
+        Log.d(TAG, "SOS triggers " + (armed ? "armed" : "disarmed"));
+    }
 
-            // Trigger SOS alert
+    // This method can be called from native code if needed for power button
+    // detection
+    public void onPowerButtonPressed() {
+        int result = pressDetector.onPress();
+        SosTracer.record(SosTracer.KEY_PRESS, KeyEvent.KEYCODE_POWER, result, pressDetector.pendingPresses());
+        if (result == MultiPressDetector.TRIGGERED) {
+            SosTracer.record(SosTracer.TRIPLE_PRESS, pressDetector.presses(), pressDetector.lastTriggerSpanMs());
             triggerSOSAlert();
         }
     }
 
     private void triggerSOSAlert() {
-        Log.d(TAG, "Triggering SOS alert from accessibility service");
+        // A gesture mixing both keys must not go on to complete the other one
+        pressDetector.reset();
+        volumeDetector.reset();
+        if (!SosTriggerGate.claim()) {
+            return;
+        }
+
+        // Straight to the dispatch engine when Dart has staged a profile
+        if (NativeSosExecutor.getInstance(this).trigger("accessibility") != null) {
+            return;
+        }
 
         // Send broadcast to notify the app about triple press
         Intent intent = new Intent("com.example.road_helperr.TRIPLE_POWER_PRESS");
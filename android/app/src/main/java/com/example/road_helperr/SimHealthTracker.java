@@ -0,0 +1,228 @@
+package com.example.road_helperr;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.telephony.SmsManager;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-subscription send health used to decide which SIM to try first.
+ *
+ * Each SIM keeps its recent outcomes, a result-code breakdown and its recent
+ * sent-confirmation latencies in fixed-size ring buffers. The state is saved
+ * to SharedPreferences so the ordering survives restarts.
+ */
+final class SimHealthTracker {
+    private static final String TAG = "SimHealthTracker";
+    private static final String PREFS_NAME = "sim_health";
+    private static final String KEY_PREFIX = "sub_";
+
+    private static final int OUTCOME_WINDOW = 32;
+    private static final int LATENCY_WINDOW = 64;
+
+    // Assumed latency for a SIM that has never confirmed a send
+    private static final long DEFAULT_LATENCY_MS = 5000;
+
+    // Result code buckets for the breakdown
+    static final int CODE_OK = 0;
+    static final int CODE_GENERIC_FAILURE = 1;
+    static final int CODE_NO_SERVICE = 2;
+    static final int CODE_NULL_PDU = 3;
+    static final int CODE_RADIO_OFF = 4;
+    static final int CODE_OTHER = 5;
+    private static final int CODE_BUCKETS = 6;
+
+    static final class SimHealth {
+        private final boolean[] outcomes = new boolean[OUTCOME_WINDOW];
+        private int outcomeCount;
+        private int outcomeHead;
+        private final long[] latencies = new long[LATENCY_WINDOW];
+        private int latencyCount;
+        private int latencyHead;
+        private final long[] codeCounts = new long[CODE_BUCKETS];
+
+        synchronized void record(int resultCode, long latencyMs) {
+            boolean success = resultCode == Activity.RESULT_OK;
+            outcomes[outcomeHead] = success;
+            outcomeHead = (outcomeHead + 1) % OUTCOME_WINDOW;
+            outcomeCount = Math.min(outcomeCount + 1, OUTCOME_WINDOW);
+            codeCounts[codeBucket(resultCode)]++;
+
+            if (success && latencyMs >= 0) {
+                latencies[latencyHead] = latencyMs;
+                latencyHead = (latencyHead + 1) % LATENCY_WINDOW;
+                latencyCount = Math.min(latencyCount + 1, LATENCY_WINDOW);
+            }
+        }
+
+        /** Success rate over the outcome window, smoothed so one result never means 0% or 100%. */
+        synchronized double successRate() {
+            int successes = 0;
+            for (int i = 0; i < outcomeCount; i++) {
+                if (outcomes[i]) {
+                    successes++;
+                }
+            }
+            return (successes + 1.0) / (outcomeCount + 2.0);
+        }
+
+        /** Latency percentile (0-100) of confirmed sends, or -1 if there are none yet. */
+        synchronized long latencyPercentile(int percentile) {
+            if (latencyCount == 0) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(latencies, latencyCount);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * latencyCount) - 1;
+            return sorted[Math.max(0, Math.min(index, latencyCount - 1))];
+        }
+
+        synchronized long[] codeCounts() {
+            return codeCounts.clone();
+        }
+
+        /** Expected time until a confirmed send on this SIM; lower is better. */
+        double expectedTimeToSuccessMs() {
+            long median = latencyPercentile(50);
+            return (median < 0 ? DEFAULT_LATENCY_MS : median) / successRate();
+        }
+
+        synchronized JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            JSONArray outcomeArray = new JSONArray();
+            for (int i = 0; i < outcomeCount; i++) {
+                outcomeArray.put(outcomes[(outcomeHead - outcomeCount + i + OUTCOME_WINDOW) % OUTCOME_WINDOW]);
+            }
+            JSONArray latencyArray = new JSONArray();
+            for (int i = 0; i < latencyCount; i++) {
+                latencyArray.put(latencies[(latencyHead - latencyCount + i + LATENCY_WINDOW) % LATENCY_WINDOW]);
+            }
+            JSONArray codeArray = new JSONArray();
+            for (long count : codeCounts) {
+                codeArray.put(count);
+            }
+            json.put("outcomes", outcomeArray);
+            json.put("latencies", latencyArray);
+            json.put("codes", codeArray);
+            return json;
+        }
+
+        synchronized void loadJson(JSONObject json) throws JSONException {
+            JSONArray outcomeArray = json.getJSONArray("outcomes");
+            for (int i = Math.max(0, outcomeArray.length() - OUTCOME_WINDOW); i < outcomeArray.length(); i++) {
+                outcomes[outcomeHead] = outcomeArray.getBoolean(i);
+                outcomeHead = (outcomeHead + 1) % OUTCOME_WINDOW;
+                outcomeCount = Math.min(outcomeCount + 1, OUTCOME_WINDOW);
+            }
+            JSONArray latencyArray = json.getJSONArray("latencies");
+            for (int i = Math.max(0, latencyArray.length() - LATENCY_WINDOW); i < latencyArray.length(); i++) {
+                latencies[latencyHead] = latencyArray.getLong(i);
+                latencyHead = (latencyHead + 1) % LATENCY_WINDOW;
+                latencyCount = Math.min(latencyCount + 1, LATENCY_WINDOW);
+            }
+            JSONArray codeArray = json.getJSONArray("codes");
+            for (int i = 0; i < Math.min(codeArray.length(), CODE_BUCKETS); i++) {
+                codeCounts[i] = codeArray.getLong(i);
+            }
+        }
+    }
+
+    private final SharedPreferences preferences;
+    private final ConcurrentHashMap<Integer, SimHealth> healthBySubscription = new ConcurrentHashMap<>();
+
+    SimHealthTracker(Context context) {
+        preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    static int codeBucket(int resultCode) {
+        switch (resultCode) {
+            case Activity.RESULT_OK:
+                return CODE_OK;
+            case SmsManager.RESULT_ERROR_GENERIC_FAILURE:
+                return CODE_GENERIC_FAILURE;
+            case SmsManager.RESULT_ERROR_NO_SERVICE:
+                return CODE_NO_SERVICE;
+            case SmsManager.RESULT_ERROR_NULL_PDU:
+                return CODE_NULL_PDU;
+            case SmsManager.RESULT_ERROR_RADIO_OFF:
+                return CODE_RADIO_OFF;
+            default:
+                return CODE_OTHER;
+        }
+    }
+
+    SimHealth get(int subscriptionId) {
+        SimHealth health = healthBySubscription.get(subscriptionId);
+        if (health == null) {
+            health = load(subscriptionId);
+            SimHealth existing = healthBySubscription.putIfAbsent(subscriptionId, health);
+            if (existing != null) {
+                health = existing;
+            }
+        }
+        return health;
+    }
+
+    void record(int subscriptionId, int resultCode, long latencyMs) {
+        if (subscriptionId < 0) {
+            return;
+        }
+        SimHealth health = get(subscriptionId);
+        health.record(resultCode, latencyMs);
+        save(subscriptionId, health);
+    }
+
+    /** Returns the given subscriptions ordered from most to least likely to succeed fastest. */
+    List<Integer> rank(List<Integer> subscriptionIds) {
+        if (subscriptionIds.size() < 2) {
+            return subscriptionIds;
+        }
+        final List<Integer> ranked = new ArrayList<>(subscriptionIds);
+        final double[] scores = new double[ranked.size()];
+        for (int i = 0; i < ranked.size(); i++) {
+            scores[i] = get(ranked.get(i)).expectedTimeToSuccessMs();
+        }
+        final List<Integer> original = new ArrayList<>(ranked);
+        // Stable sort keeps slot order for SIMs with equal scores
+        Collections.sort(ranked, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(scores[original.indexOf(a)], scores[original.indexOf(b)]);
+            }
+        });
+        return ranked;
+    }
+
+    private SimHealth load(int subscriptionId) {
+        SimHealth health = new SimHealth();
+        String stored = preferences.getString(KEY_PREFIX + subscriptionId, null);
+        if (stored != null) {
+            try {
+                health.loadJson(new JSONObject(stored));
+            } catch (JSONException e) {
+                Log.e(TAG, "Discarding unreadable health for subscription " + subscriptionId + ": " + e.getMessage());
+            }
+        }
+        return health;
+    }
+
+    private void save(int subscriptionId, SimHealth health) {
+        try {
+            preferences.edit().putString(KEY_PREFIX + subscriptionId, health.toJson().toString()).apply();
+        } catch (JSONException e) {
+            Log.e(TAG, "Error saving health for subscription " + subscriptionId + ": " + e.getMessage());
+        }
+    }
+}
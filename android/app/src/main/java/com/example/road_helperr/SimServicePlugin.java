@@ -1,15 +1,11 @@
 package com.example.road_helperr;
 
 import android.content.Context;
-import android.telephony.SubscriptionInfo;
-import android.telephony.SubscriptionManager;
-import android.telephony.TelephonyManager;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -25,16 +21,31 @@ public class SimServicePlugin implements FlutterPlugin, MethodCallHandler {
 
     private MethodChannel channel;
     private Context context;
+    private SubscriptionRegistry registry;
+
+    // Pushes every subscription change to Dart; always called on the main thread
+    private final SubscriptionRegistry.ChangeListener changeListener = new SubscriptionRegistry.ChangeListener() {
+        @Override
+        public void onSubscriptionsChanged(SubscriptionRegistry.Snapshot snapshot) {
+            if (channel != null) {
+                channel.invokeMethod("onSubscriptionsChanged", snapshot.toMap());
+            }
+        }
+    };
 
     @Override
     public void onAttachedToEngine(@NonNull FlutterPlugin.FlutterPluginBinding binding) {
         channel = new MethodChannel(binding.getBinaryMessenger(), CHANNEL_NAME);
         channel.setMethodCallHandler(this);
         context = binding.getApplicationContext();
+        registry = SubscriptionRegistry.getInstance(context);
+        registry.addListener(changeListener);
     }
 
     @Override
     public void onDetachedFromEngine(@NonNull FlutterPlugin.FlutterPluginBinding binding) {
+        registry.removeListener(changeListener);
+        registry = null;
         channel.setMethodCallHandler(null);
         channel = null;
         context = null;
@@ -53,6 +64,9 @@ public class SimServicePlugin implements FlutterPlugin, MethodCallHandler {
                 case "getActiveSimCount":
                     result.success(getActiveSimCount());
                     break;
+                case "getSubscriptionSnapshot":
+                    result.success(registry.snapshot().toMap());
+                    break;
                 default:
                     result.notImplemented();
                     break;
@@ -64,109 +78,34 @@ public class SimServicePlugin implements FlutterPlugin, MethodCallHandler {
     }
 
     private boolean hasDualSim() {
-        try {
-            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.LOLLIPOP_MR1) {
-                SubscriptionManager subscriptionManager = (SubscriptionManager) context
-                        .getSystemService(Context.TELEPHONY_SUBSCRIPTION_SERVICE);
-                if (subscriptionManager != null) {
-                    List<SubscriptionInfo> subscriptionInfos = subscriptionManager.getActiveSubscriptionInfoList();
-                    if (subscriptionInfos != null) {
-                        boolean hasDual = subscriptionInfos.size() >= 2;
-                        Log.d(TAG, "Dual SIM check: " + hasDual + " (found " + subscriptionInfos.size()
-                                + " active subscriptions)");
-                        return hasDual;
-                    }
-                }
-            }
-
-            // Fallback method for older Android versions
-            TelephonyManager telephonyManager = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
-            if (telephonyManager != null) {
-                if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
-                    int phoneCount = telephonyManager.getPhoneCount();
-                    boolean hasDual = phoneCount >= 2;
-                    Log.d(TAG, "Dual SIM check (fallback): " + hasDual + " (phone count: " + phoneCount + ")");
-                    return hasDual;
-                }
-            }
-
-            Log.d(TAG, "Dual SIM check: false (unable to determine)");
-            return false;
-        } catch (Exception e) {
-            Log.e(TAG, "Error checking dual SIM: " + e.getMessage());
-            return false;
+        SubscriptionRegistry.Snapshot snapshot = registry.snapshot();
+        if (!snapshot.sims.isEmpty()) {
+            SosTracer.record(SosTracer.SIM_QUERY, snapshot.sims.size(), snapshot.phoneCount);
+            return snapshot.sims.size() >= 2;
         }
+
+        // Fallback when no subscription list is available
+        SosTracer.record(SosTracer.SIM_QUERY, 0, snapshot.phoneCount);
+        return snapshot.phoneCount >= 2;
     }
 
     private List<Map<String, Object>> getSimInfo() {
-        List<Map<String, Object>> simInfoList = new ArrayList<>();
-
-        try {
-            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.LOLLIPOP_MR1) {
-                SubscriptionManager subscriptionManager = (SubscriptionManager) context
-                        .getSystemService(Context.TELEPHONY_SUBSCRIPTION_SERVICE);
-                if (subscriptionManager != null) {
-                    List<SubscriptionInfo> subscriptionInfos = subscriptionManager.getActiveSubscriptionInfoList();
-                    if (subscriptionInfos != null) {
-                        for (SubscriptionInfo info : subscriptionInfos) {
-                            Map<String, Object> simInfo = new HashMap<>();
-                            simInfo.put("subscriptionId", info.getSubscriptionId());
-                            simInfo.put("simSlotIndex", info.getSimSlotIndex());
-                            simInfo.put("carrierName",
-                                    info.getCarrierName() != null ? info.getCarrierName().toString() : "Unknown");
-                            simInfo.put("displayName", info.getDisplayName() != null ? info.getDisplayName().toString()
-                                    : "SIM " + (info.getSimSlotIndex() + 1));
-                            simInfo.put("phoneNumber", info.getNumber() != null ? info.getNumber() : "Unknown");
-                            simInfo.put("countryIso", info.getCountryIso() != null ? info.getCountryIso() : "Unknown");
-
-                            simInfoList.add(simInfo);
-
-                            Log.d(TAG, "SIM Info: ID=" + info.getSubscriptionId() +
-                                    ", Slot=" + info.getSimSlotIndex() +
-                                    ", Carrier=" + info.getCarrierName() +
-                                    ", Display=" + info.getDisplayName());
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error getting SIM info: " + e.getMessage());
+        SubscriptionRegistry.Snapshot snapshot = registry.snapshot();
+        List<Map<String, Object>> simInfoList = new ArrayList<>(snapshot.sims.size());
+        for (SubscriptionRegistry.SimCard sim : snapshot.sims) {
+            simInfoList.add(sim.toMap());
         }
-
-        Log.d(TAG, "Found " + simInfoList.size() + " SIM cards");
         return simInfoList;
     }
 
     private int getActiveSimCount() {
-        try {
-            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.LOLLIPOP_MR1) {
-                SubscriptionManager subscriptionManager = (SubscriptionManager) context
-                        .getSystemService(Context.TELEPHONY_SUBSCRIPTION_SERVICE);
-                if (subscriptionManager != null) {
-                    List<SubscriptionInfo> subscriptionInfos = subscriptionManager.getActiveSubscriptionInfoList();
-                    if (subscriptionInfos != null) {
-                        int count = subscriptionInfos.size();
-                        Log.d(TAG, "Active SIM count: " + count);
-                        return count;
-                    }
-                }
-            }
-
-            // Fallback method for older Android versions
-            TelephonyManager telephonyManager = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
-            if (telephonyManager != null) {
-                if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
-                    int phoneCount = telephonyManager.getPhoneCount();
-                    Log.d(TAG, "Active SIM count (fallback): " + phoneCount);
-                    return phoneCount;
-                }
-            }
-
-            Log.d(TAG, "Active SIM count: 0 (unable to determine)");
-            return 0;
-        } catch (Exception e) {
-            Log.e(TAG, "Error getting active SIM count: " + e.getMessage());
-            return 0;
+        SubscriptionRegistry.Snapshot snapshot = registry.snapshot();
+        SosTracer.record(SosTracer.SIM_QUERY, snapshot.sims.size(), snapshot.phoneCount);
+        if (!snapshot.sims.isEmpty()) {
+            return snapshot.sims.size();
         }
+
+        // Fallback when no subscription list is available
+        return snapshot.phoneCount;
     }
 }
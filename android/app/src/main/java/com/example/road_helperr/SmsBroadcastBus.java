@@ -0,0 +1,112 @@
+package com.example.road_helperr;
+
+import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.telephony.SmsManager;
+
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The single receiver for the dispatcher's sent and delivered broadcasts.
+ *
+ * It is registered once on the application context for the life of the
+ * process. Each broadcast is decoded once, matched to its send by message id
+ * and folded into the dispatcher, and only then fanned out to subscribers
+ * with the resolved {@link SmsInFlightRegistry.OutboundSms}. Intermediate
+ * parts of a multipart send and unknown ids never reach subscribers.
+ *
+ * Requests the dispatcher fails without any sent broadcast (no SIM took the
+ * send command) are published here too, so every consumer of final outcomes
+ * subscribes to this one path.
+ */
+final class SmsBroadcastBus {
+    interface Subscriber {
+        /** Last part of a send has reported; report is false for attempts superseded by another SIM. */
+        void onSmsSent(SmsInFlightRegistry.OutboundSms sms, boolean report);
+
+        void onSmsDelivered(SmsInFlightRegistry.OutboundSms sms);
+
+        /** Final failure of a request that never produced a sent broadcast; status is as reported to Flutter. */
+        void onRequestFailed(long requestId, Map<String, Object> status);
+    }
+
+    private final SmsDispatcher dispatcher;
+    private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    private final BroadcastReceiver receiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            onBroadcast(intent, getResultCode());
+        }
+    };
+
+    SmsBroadcastBus(SmsDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    void register(Context context) {
+        IntentFilter filter = new IntentFilter(SmsDispatcher.ACTION_SMS_SENT);
+        filter.addAction(SmsDispatcher.ACTION_SMS_DELIVERED);
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        // The status intents are package-scoped and sent on this app's behalf
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            context.registerReceiver(receiver, filter, null, mainHandler, Context.RECEIVER_NOT_EXPORTED);
+        } else {
+            context.registerReceiver(receiver, filter, null, mainHandler);
+        }
+    }
+
+    void subscribe(Subscriber subscriber) {
+        subscribers.addIfAbsent(subscriber);
+    }
+
+    void unsubscribe(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    void publishFailure(long requestId, Map<String, Object> status) {
+        SosTracer.record(SosTracer.SENT_FAILED, requestId, -1, SmsManager.RESULT_ERROR_GENERIC_FAILURE);
+        for (Subscriber subscriber : subscribers) {
+            subscriber.onRequestFailed(requestId, status);
+        }
+    }
+
+    private void onBroadcast(Intent intent, int resultCode) {
+        String action = intent.getAction();
+        long messageId = intent.getLongExtra(SmsDispatcher.EXTRA_MESSAGE_ID, -1);
+        int partIndex = intent.getIntExtra(SmsDispatcher.EXTRA_PART_INDEX, 0);
+
+        if (SmsDispatcher.ACTION_SMS_SENT.equals(action)) {
+            SmsInFlightRegistry.OutboundSms sms = dispatcher.onSentBroadcast(messageId, partIndex, resultCode);
+            if (sms == null) {
+                return;
+            }
+            boolean report = dispatcher.onSendCompleted(sms);
+            if (sms.getResultCode() == Activity.RESULT_OK) {
+                SosTracer.record(SosTracer.SENT_OK, sms.requestId, sms.messageId, sms.subscriptionId);
+            } else {
+                SosTracer.record(SosTracer.SENT_FAILED, sms.requestId, sms.messageId, sms.getResultCode());
+            }
+            for (Subscriber subscriber : subscribers) {
+                subscriber.onSmsSent(sms, report);
+            }
+        } else if (SmsDispatcher.ACTION_SMS_DELIVERED.equals(action)) {
+            SmsInFlightRegistry.OutboundSms sms = dispatcher.onDeliveredBroadcast(messageId, partIndex, resultCode,
+                    intent.getByteArrayExtra("pdu"), intent.getStringExtra("format"));
+            if (sms == null) {
+                return;
+            }
+            SosTracer.record(SosTracer.DELIVERED, sms.requestId, sms.messageId, sms.isDelivered() ? 1 : 0);
+            for (Subscriber subscriber : subscribers) {
+                subscriber.onSmsDelivered(sms);
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.road_helperr;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Folds identical sends that arrive close together into one request.
+ *
+ * The same SOS can be fired within seconds by several triggers (power button
+ * receiver, accessibility service, background service, Dart). A send to a
+ * recipient with the same payload class as a request started less than the
+ * window ago gets that request's id instead of a new request, so every caller
+ * waits on the same status. Successful results are kept for the rest of the
+ * window to answer callers that arrive after the send finished; failed
+ * requests are forgotten at once so an explicit retry really sends again.
+ */
+final class SmsCoalescer {
+    static final long DEFAULT_WINDOW_MS = 30000;
+
+    private static final class Entry {
+        final String key;
+        final long requestId;
+        final long createdAtMs;
+        Map<String, Object> finalStatus;
+
+        Entry(String key, long requestId, long createdAtMs) {
+            this.key = key;
+            this.requestId = requestId;
+            this.createdAtMs = createdAtMs;
+        }
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<Long, Entry> entriesByRequestId = new HashMap<>();
+    private long windowMs = DEFAULT_WINDOW_MS;
+
+    /** Zero disables coalescing. */
+    synchronized void setWindowMs(long windowMs) {
+        this.windowMs = Math.max(0, windowMs);
+        if (this.windowMs == 0) {
+            entries.clear();
+            entriesByRequestId.clear();
+        }
+    }
+
+    /** Recipient digits plus payload class, so "+20 100-123" and "+20100123" coalesce. */
+    static String key(String phoneNumber, String payloadClass) {
+        StringBuilder key = new StringBuilder(phoneNumber.length() + payloadClass.length() + 1);
+        for (int i = 0; i < phoneNumber.length(); i++) {
+            char c = phoneNumber.charAt(i);
+            if (Character.isDigit(c) || (c == '+' && key.length() == 0)) {
+                key.append(c);
+            }
+        }
+        return key.append('|').append(payloadClass).toString();
+    }
+
+    /**
+     * Returns the id of the request already covering the key, or registers
+     * and returns newRequestId if there is none.
+     */
+    synchronized long join(String key, long newRequestId, long nowMs) {
+        if (windowMs == 0) {
+            return newRequestId;
+        }
+        purge(nowMs);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            return entry.requestId;
+        }
+        entry = new Entry(key, newRequestId, nowMs);
+        entries.put(key, entry);
+        entriesByRequestId.put(newRequestId, entry);
+        return newRequestId;
+    }
+
+    /** Records the status reported for a request; only successes are kept for late callers. */
+    synchronized void onFinalStatus(long requestId, boolean success, Map<String, Object> status) {
+        Entry entry = entriesByRequestId.get(requestId);
+        if (entry == null) {
+            return;
+        }
+        if (success) {
+            entry.finalStatus = status;
+        } else {
+            entries.remove(entry.key);
+            entriesByRequestId.remove(requestId);
+        }
+    }
+
+    /** Final status of a coalesced request, or null while it is still in flight. */
+    synchronized Map<String, Object> finalStatus(long requestId) {
+        Entry entry = entriesByRequestId.get(requestId);
+        return entry != null ? entry.finalStatus : null;
+    }
+
+    private void purge(long nowMs) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (nowMs - entry.createdAtMs >= windowMs) {
+                iterator.remove();
+                entriesByRequestId.remove(entry.requestId);
+            }
+        }
+    }
+}
@@ -0,0 +1,860 @@
+package com.example.road_helperr;
+
+import android.app.Activity;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.telephony.SmsManager;
+import android.telephony.SmsMessage;
+import android.util.Log;
+
+import com.shounakmulay.telephony.utils.SosDataCodec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide SMS dispatch engine.
+ *
+ * Sends run on a dedicated executor so callers (the platform thread in
+ * particular) never wait on SmsManager or on the inter-SIM delay. The delayed
+ * secondary-SIM send is scheduled instead of slept.
+ *
+ * By default a request is hedged: it goes out on the best SIM and the next SIM
+ * is only used if that attempt fails or has not confirmed within an adaptive
+ * deadline, so a healthy primary SIM no longer produces a duplicate SMS.
+ *
+ * Every send on a SIM takes a permit from that SIM's {@link SmsRateLimiter};
+ * sends over the burst are scheduled for when their permit becomes valid.
+ */
+final class SmsDispatcher {
+    private static final String TAG = "SmsDispatcher";
+
+    static final String ACTION_SMS_SENT = "com.example.road_helper.SMS_SENT";
+    static final String ACTION_SMS_DELIVERED = "com.example.road_helper.SMS_DELIVERED";
+
+    // The only extras carried by the sent/delivered PendingIntents; see SmsInFlightRegistry
+    static final String EXTRA_MESSAGE_ID = "message_id";
+    static final String EXTRA_PART_INDEX = "part_index";
+
+    // Hedge deadline before a SIM has any send history
+    private static final long SECONDARY_SIM_DELAY_MS = 8000;
+
+    // Bounds on the adaptive hedge deadline (1.5x the primary SIM's p90 sent latency)
+    private static final long MIN_HEDGE_DELAY_MS = 2000;
+    private static final long MAX_HEDGE_DELAY_MS = 15000;
+
+    // Requests whose attempts never report back are dropped after this long
+    private static final long STALE_REQUEST_MS = 10 * 60 * 1000;
+
+    // Upper bound on batch recipients being handed to SmsManager at the same time
+    private static final int MAX_PARALLEL_SENDS = 4;
+
+    private static volatile SmsDispatcher instance;
+
+    private final Context context;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService batchExecutor;
+    private final SmsInFlightRegistry inFlight = new SmsInFlightRegistry();
+    private final SimHealthTracker simHealth;
+    private final SubscriptionRegistry subscriptions;
+    private final SmsOutboxJournal journal;
+    private final SmsRetryScheduler retryScheduler;
+    private final SmsLatencyStats latencyStats = new SmsLatencyStats();
+    private final SmsMetrics metrics = new SmsMetrics();
+    private final SmsCoalescer coalescer = new SmsCoalescer();
+    private final SmsRateLimiter rateLimiter = new SmsRateLimiter();
+    private final SmsBroadcastBus broadcastBus = new SmsBroadcastBus(this);
+    private final ConcurrentHashMap<Long, SmsRequest> activeRequests = new ConcurrentHashMap<>();
+    // Seeded from the wall clock so request ids stay unique across restarts in the outbox journal
+    private final AtomicLong nextRequestId = new AtomicLong(System.currentTimeMillis() << 12);
+    private final AtomicBoolean outboxReplayed = new AtomicBoolean(false);
+    private volatile SmsRequest.Mode defaultMode = SmsRequest.Mode.HEDGED;
+    // How GsmSegmentPlanner may rearrange a body that does not fit GSM-7
+    private volatile boolean splitNonGsm = true;
+    private volatile boolean transliterate = false;
+
+    static SmsDispatcher getInstance(Context context) {
+        SmsDispatcher result = instance;
+        if (result == null) {
+            synchronized (SmsDispatcher.class) {
+                result = instance;
+                if (result == null) {
+                    result = new SmsDispatcher(context.getApplicationContext());
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private SmsDispatcher(Context context) {
+        this.context = context;
+        this.simHealth = new SimHealthTracker(context);
+        this.subscriptions = SubscriptionRegistry.getInstance(context);
+        this.executor = Executors.newSingleThreadExecutor(namedThreadFactory("sms-dispatch"));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(namedThreadFactory("sms-scheduler"));
+        this.batchExecutor = Executors.newFixedThreadPool(MAX_PARALLEL_SENDS, namedThreadFactory("sms-batch"));
+        // Group commits get their own thread, so hedge and retry timers never wait on a force()
+        this.journal = new SmsOutboxJournal(context,
+                Executors.newSingleThreadScheduledExecutor(namedThreadFactory("sms-journal")));
+        this.retryScheduler = new SmsRetryScheduler(context, scheduler, new SmsRetryScheduler.Callback() {
+            @Override
+            public void onRetryDue(long requestId) {
+                SmsRequest request = activeRequests.get(requestId);
+                if (request != null) {
+                    startRetryRound(request);
+                }
+            }
+        });
+        // Before anything can be sent, so no status broadcast is missed
+        broadcastBus.register(context);
+        // Recovery and the first segment roll run ahead of any send queued after this
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                journal.open();
+            }
+        });
+    }
+
+    private static ThreadFactory namedThreadFactory(final String name) {
+        final AtomicInteger count = new AtomicInteger(1);
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /** Runs a task on the dispatch executor, off the caller's thread. */
+    void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    SmsInFlightRegistry inFlight() {
+        return inFlight;
+    }
+
+    SmsRequest.Mode getDefaultMode() {
+        return defaultMode;
+    }
+
+    void setDefaultMode(SmsRequest.Mode mode) {
+        defaultMode = mode;
+    }
+
+    void setMessagePlanning(boolean splitNonGsm, boolean transliterate) {
+        this.splitNonGsm = splitNonGsm;
+        this.transliterate = transliterate;
+    }
+
+    void setCoalescingWindow(long windowMs) {
+        coalescer.setWindowMs(windowMs);
+    }
+
+    /**
+     * Queues an SMS for sending and returns its request id immediately. The
+     * outcome is published on the {@link SmsBroadcastBus}, from the sent-status
+     * broadcast or directly if no send command could be issued.
+     *
+     * A send matching one started within the coalescing window (same recipient
+     * and payload class) returns that request's id instead; payloadClass
+     * defaults to the message text.
+     */
+    long dispatch(final String phoneNumber, final String message, String payloadClass,
+            final SmsRequest.Mode mode) {
+        final long requestId = nextRequestId.getAndIncrement();
+        long coalescedId = coalesce(phoneNumber, message, null, payloadClass, requestId);
+        if (coalescedId != requestId) {
+            return coalescedId;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                start(requestId, -1, phoneNumber, message, null, mode, getRankedSubscriptionIds(), 0, false);
+            }
+        });
+        return requestId;
+    }
+
+    /**
+     * Queues one message for every recipient and returns their request ids in
+     * recipient order. Recipients are spread across the active SIMs and sent in
+     * parallel, so each one reports its own status as soon as the radio answers.
+     */
+    long[] dispatchBatch(long batchId, List<String> phoneNumbers, String message, String payloadClass,
+            SmsRequest.Mode mode) {
+        return dispatchBatch(batchId, phoneNumbers, message, null, payloadClass, mode);
+    }
+
+    /**
+     * Like {@link #dispatchBatch(long, List, String, String, SmsRequest.Mode)}, but sends the
+     * given {@link SosDataCodec} payload as a data SMS. The first failed data
+     * attempt switches the request to the text, which is also what the outbox
+     * replays, since the journal does not store the payload.
+     */
+    long[] dispatchBatch(final long batchId, final List<String> phoneNumbers, final String message,
+            final byte[] dataPayload, String payloadClass, final SmsRequest.Mode mode) {
+        final long[] requestIds = new long[phoneNumbers.size()];
+        // Recipients already covered by a recent identical send share its request
+        final boolean[] coalesced = new boolean[requestIds.length];
+        for (int i = 0; i < requestIds.length; i++) {
+            long requestId = nextRequestId.getAndIncrement();
+            requestIds[i] = coalesce(phoneNumbers.get(i), message, dataPayload, payloadClass, requestId);
+            coalesced[i] = requestIds[i] != requestId;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Ranked order, so the healthiest SIM takes the first (and any odd) recipient
+                final List<Integer> subscriptionIds = getRankedSubscriptionIds();
+                SosTracer.record(SosTracer.BATCH_DISPATCHED, batchId, requestIds.length, subscriptionIds.size());
+                for (int i = 0; i < requestIds.length; i++) {
+                    if (coalesced[i]) {
+                        continue;
+                    }
+                    final int index = i;
+                    batchExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            start(requestIds[index], batchId, phoneNumbers.get(index), message, dataPayload,
+                                    mode, subscriptionIds, index, false);
+                        }
+                    });
+                }
+            }
+        });
+        return requestIds;
+    }
+
+    long nextBatchId() {
+        return nextRequestId.getAndIncrement();
+    }
+
+    private long coalesce(String phoneNumber, String message, byte[] dataPayload, String payloadClass,
+            long requestId) {
+        if (payloadClass == null) {
+            payloadClass = dataPayload != null ? "sos-data" : message;
+        }
+        long coalescedId = coalescer.join(SmsCoalescer.key(phoneNumber, payloadClass), requestId,
+                System.currentTimeMillis());
+        if (coalescedId != requestId) {
+            metrics.coalesced.incrementAndGet();
+            SosTracer.record(SosTracer.REQUEST_COALESCED, requestId, coalescedId);
+        }
+        return coalescedId;
+    }
+
+    /** Final status of a request a caller was coalesced into, or null while it is in flight. */
+    Map<String, Object> getCoalescedStatus(long requestId) {
+        return coalescer.finalStatus(requestId);
+    }
+
+    /**
+     * Sends again every request an earlier process enqueued but never finished.
+     * Runs once per process, from app start or from the boot receiver.
+     */
+    void replayOutbox() {
+        if (!outboxReplayed.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                List<SmsOutboxJournal.Entry> entries = journal.takeUnfinished(System.currentTimeMillis());
+                if (entries.isEmpty()) {
+                    return;
+                }
+                Log.d(TAG, "Replaying " + entries.size() + " unfinished SMS from the outbox");
+                List<Integer> subscriptionIds = getRankedSubscriptionIds();
+                for (SmsOutboxJournal.Entry entry : entries) {
+                    start(entry.requestId, entry.batchId, entry.phoneNumber, entry.message, null, entry.mode,
+                            subscriptionIds, 0, true);
+                }
+            }
+        });
+    }
+
+    private void start(long requestId, long batchId, String phoneNumber, String message, byte[] dataPayload,
+            SmsRequest.Mode mode, List<Integer> rankedSubscriptionIds, int rotation, boolean replayed) {
+        long now = System.currentTimeMillis();
+        purgeStaleRequests(now);
+
+        // Batch recipients start on different SIMs; each still falls through the rest in ranked order
+        List<Integer> simOrder = new ArrayList<>(rankedSubscriptionIds);
+        if (!simOrder.isEmpty()) {
+            Collections.rotate(simOrder, -(rotation % simOrder.size()));
+        }
+        SmsRequest request = new SmsRequest(requestId, batchId, phoneNumber, message, dataPayload, mode, simOrder,
+                now);
+        if (replayed) {
+            metrics.replayed.incrementAndGet();
+        } else {
+            metrics.enqueued.incrementAndGet();
+            journal.recordEnqueue(request);
+        }
+        activeRequests.put(requestId, request);
+        SosTracer.record(SosTracer.REQUEST_QUEUED, requestId, mode.ordinal(), simOrder.size());
+        launchNextAttempt(request);
+    }
+
+    /**
+     * Sends on the next untried SIM. SIMs whose send command fails outright are
+     * skipped immediately; the default SmsManager is the last resort when no SIM
+     * took the message at all.
+     */
+    private void launchNextAttempt(SmsRequest request) {
+        try {
+            if (!request.wantsMoreAttempts()) {
+                return;
+            }
+            Integer subscriptionId;
+            while ((subscriptionId = request.nextSim()) != null) {
+                long waitMs = rateLimiter.reserve(subscriptionId, System.currentTimeMillis());
+                if (waitMs > 0) {
+                    deferAttempt(request, subscriptionId, waitMs);
+                    return;
+                }
+                if (sendSmsWithSubscription(request, subscriptionId)) {
+                    scheduleFollowUp(request, subscriptionId);
+                    return;
+                }
+            }
+            if (request.claimDefaultManager()) {
+                SosTracer.record(SosTracer.DEFAULT_MANAGER, request.requestId);
+                if (sendSmsWithDefaultManager(request)) {
+                    return;
+                }
+                if (fallBackToText(request, -1)) {
+                    executor.execute(launchTask(request));
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error dispatching request " + request.requestId + ": " + e.getMessage());
+        }
+        // Nothing left to launch; retry or fail now unless an earlier attempt can still succeed
+        if (request.awaitRetry() && retryOrFail(request, SmsManager.RESULT_ERROR_GENERIC_FAILURE)) {
+            reportFailure(request.requestId, request.batchId, request.phoneNumber, request.firstSim(),
+                    "Send command failed on all SIMs");
+        }
+        removeIfFinished(request);
+    }
+
+    // The SIM's permit is reserved; the request is held open until it becomes valid
+    private void deferAttempt(final SmsRequest request, final int subscriptionId, long waitMs) {
+        metrics.rateLimited.incrementAndGet();
+        request.holdAttempt();
+        SosTracer.record(SosTracer.RATE_LIMITED, request.requestId, subscriptionId, waitMs);
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        // The hold is released only after the attempt itself is counted
+                        boolean launched = request.wantsMoreAttempts()
+                                && sendSmsWithSubscription(request, subscriptionId);
+                        request.releaseAttempt();
+                        if (launched) {
+                            scheduleFollowUp(request, subscriptionId);
+                        } else if (request.wantsMoreAttempts()) {
+                            launchNextAttempt(request);
+                        } else {
+                            removeIfFinished(request);
+                        }
+                    }
+                });
+            }
+        }, waitMs, TimeUnit.MILLISECONDS);
+    }
+
+    void setRateLimit(int burst, long refillIntervalMs) {
+        rateLimiter.configure(burst, refillIntervalMs);
+    }
+
+    /**
+     * Called once every attempt of the current round has failed. Schedules the
+     * next round if the retry policy allows it; otherwise settles the request
+     * and returns true so the caller reports the final failure.
+     */
+    private boolean retryOrFail(SmsRequest request, int resultCode) {
+        if (retryScheduler.schedule(request.requestId, request.retryRound(), resultCode)) {
+            return false;
+        }
+        if (request.settle()) {
+            metrics.failed.incrementAndGet();
+            journalFailed(request.requestId);
+            return true;
+        }
+        return false;
+    }
+
+    // Journal writes can open the segment and scan it, so the broadcast paths never run them inline
+    private void journalPartSent(final long requestId, final long messageId, final int partIndex,
+            final int partCount) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                journal.recordPartSent(requestId, messageId, partIndex, partCount);
+            }
+        });
+    }
+
+    private void journalSent(final long requestId) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                journal.recordSent(requestId);
+            }
+        });
+    }
+
+    private void journalDelivered(final long requestId) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                journal.recordDelivered(requestId);
+            }
+        });
+    }
+
+    private void journalFailed(final long requestId) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                journal.recordFailed(requestId);
+            }
+        });
+    }
+
+    private void startRetryRound(final SmsRequest request) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                metrics.retries.incrementAndGet();
+                request.startRetryRound(new ArrayList<>(getRankedSubscriptionIds()));
+                SosTracer.record(SosTracer.RETRY_ROUND, request.requestId, request.retryRound());
+                launchNextAttempt(request);
+            }
+        });
+    }
+
+    void setRetryPolicy(int maxRetries, long baseDelayMs, long maxDelayMs) {
+        retryScheduler.setPolicy(maxRetries, baseDelayMs, maxDelayMs);
+    }
+
+    private void scheduleFollowUp(final SmsRequest request, int subscriptionId) {
+        if (!request.hasMoreSims()) {
+            return;
+        }
+        long delayMs;
+        switch (request.mode) {
+            case HEDGED:
+                delayMs = hedgeDelayMs(subscriptionId);
+                break;
+            case BROADCAST_ALL:
+                // Each SIM has its own rate limiter, so the next one needs no extra spacing
+                delayMs = 0;
+                break;
+            default:
+                // Failover-only: the next SIM is launched from onSendCompleted on failure
+                return;
+        }
+        SosTracer.record(SosTracer.NEXT_SIM_SCHEDULED, request.requestId, delayMs);
+        request.setPendingAttempt(scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (request.mode == SmsRequest.Mode.HEDGED) {
+                    metrics.hedgesFired.incrementAndGet();
+                }
+                executor.execute(launchTask(request));
+            }
+        }, delayMs, TimeUnit.MILLISECONDS));
+    }
+
+    /** How long to wait for a sent confirmation on this SIM before hedging onto the next one. */
+    long hedgeDelayMs(int subscriptionId) {
+        long p90 = simHealth.get(subscriptionId).latencyPercentile(90);
+        if (p90 < 0) {
+            return SECONDARY_SIM_DELAY_MS;
+        }
+        return Math.max(MIN_HEDGE_DELAY_MS, Math.min(MAX_HEDGE_DELAY_MS, p90 * 3 / 2));
+    }
+
+    private Runnable launchTask(final SmsRequest request) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                launchNextAttempt(request);
+            }
+        };
+    }
+
+    SmsBroadcastBus broadcastBus() {
+        return broadcastBus;
+    }
+
+    /**
+     * Folds one sent broadcast into its send. Returns the send once its last
+     * part has reported (and removes it from the in-flight registry), else null.
+     */
+    SmsInFlightRegistry.OutboundSms onSentBroadcast(long messageId, int partIndex, int resultCode) {
+        SmsInFlightRegistry.OutboundSms sms = inFlight.get(messageId);
+        if (sms == null) {
+            Log.w(TAG, "Ignoring SMS status for unknown message ID: " + messageId);
+            return null;
+        }
+        if (resultCode == Activity.RESULT_OK) {
+            journalPartSent(sms.requestId, messageId, partIndex, sms.getPartCount());
+        }
+        // Multipart messages report once per part; act only when the last part is in
+        if (!sms.onPartResult(partIndex, resultCode, System.currentTimeMillis())) {
+            return null;
+        }
+        inFlight.remove(messageId);
+        if (sms.getResultCode() == Activity.RESULT_OK) {
+            latencyStats.recordSent(latencyKey(sms), sms.getLastPartLatencyMs());
+            inFlight.awaitDelivery(sms);
+        }
+        return sms;
+    }
+
+    /**
+     * Folds one delivery report into its message. Returns the message once
+     * every part has a report, else null. A part counts as delivered when its
+     * status report PDU says the transfer completed.
+     */
+    SmsInFlightRegistry.OutboundSms onDeliveredBroadcast(long messageId, int partIndex, int resultCode, byte[] pdu,
+            String format) {
+        SmsInFlightRegistry.OutboundSms sms = inFlight.getAwaitingDelivery(messageId);
+        if (sms == null) {
+            Log.w(TAG, "Ignoring delivery report for unknown message ID: " + messageId);
+            return null;
+        }
+        if (!sms.onPartDelivered(partIndex, isDelivered(resultCode, pdu, format), System.currentTimeMillis())) {
+            return null;
+        }
+        inFlight.removeAwaitingDelivery(messageId);
+        if (sms.isDelivered()) {
+            metrics.delivered.incrementAndGet();
+            latencyStats.recordDelivered(latencyKey(sms), sms.getDeliveryLatencyMs());
+            journalDelivered(sms.requestId);
+        }
+        return sms;
+    }
+
+    private static boolean isDelivered(int resultCode, byte[] pdu, String format) {
+        if (resultCode != Activity.RESULT_OK) {
+            return false;
+        }
+        if (pdu == null) {
+            return true;
+        }
+        try {
+            SmsMessage report = format != null ? SmsMessage.createFromPdu(pdu, format) : SmsMessage.createFromPdu(pdu);
+            // TP-Status: 0x00-0x1F completed, 0x20-0x3F still trying, 0x40 and up failed
+            return report == null || report.getStatus() < 0x20;
+        } catch (Exception e) {
+            Log.e(TAG, "Error parsing delivery report: " + e.getMessage());
+            return true;
+        }
+    }
+
+    private String latencyKey(SmsInFlightRegistry.OutboundSms sms) {
+        SubscriptionRegistry.SimCard sim = subscriptions.snapshot().find(sms.subscriptionId);
+        return SmsLatencyStats.key(sms.subscriptionId, sim != null ? sim.carrierName : null);
+    }
+
+    /** Sent and delivered latency histograms per SIM and carrier. */
+    Map<String, Object> getLatencyStats(boolean reset) {
+        return latencyStats.snapshot(reset);
+    }
+
+    /** Counters, current queue depths and per-SIM latency histograms, optionally resetting the counters. */
+    Map<String, Object> getMetrics(boolean reset) {
+        Map<String, Object> snapshot = metrics.snapshot(reset);
+        Map<String, Object> queue = new HashMap<>();
+        queue.put("activeRequests", activeRequests.size());
+        queue.put("inFlightSends", inFlight.size());
+        queue.put("awaitingDelivery", inFlight.awaitingDeliveryCount());
+        queue.put("pendingRetries", retryScheduler.pendingCount());
+        snapshot.put("queue", queue);
+        snapshot.put("latency", latencyStats.snapshot(reset));
+        return snapshot;
+    }
+
+    /**
+     * Folds a completed attempt into its request and the SIM health model.
+     * Returns true if the plugin should report this attempt's status: the first
+     * success, the final failure, and in broadcast-all mode every later success.
+     * A failure with SIMs left to try launches the next one straight away; once
+     * all SIMs have failed the retry scheduler decides on another round.
+     */
+    boolean onSendCompleted(SmsInFlightRegistry.OutboundSms sms) {
+        simHealth.record(sms.subscriptionId, sms.getResultCode(), sms.getLastPartLatencyMs());
+        metrics.recordAttemptResult(sms.getResultCode());
+
+        SmsRequest request = activeRequests.get(sms.requestId);
+        if (request == null) {
+            return false;
+        }
+        int outstanding = request.finishAttempt();
+        boolean report;
+
+        if (sms.getResultCode() == Activity.RESULT_OK) {
+            boolean first = request.settle();
+            if (first) {
+                metrics.sent.incrementAndGet();
+                journalSent(request.requestId);
+                // Callers coalesced into this request share its first success
+                coalescer.onFinalStatus(request.requestId, true, sentStatus(sms));
+            }
+            report = first || request.mode == SmsRequest.Mode.BROADCAST_ALL;
+            if (!report) {
+                metrics.duplicatesSuppressed.incrementAndGet();
+            }
+        } else if (request.isSettled()) {
+            report = false;
+        } else if (fallBackToText(request, sms.subscriptionId)) {
+            // Start over with the text right away instead of hedging the data SMS
+            request.cancelPendingAttempt();
+            executor.execute(launchTask(request));
+            report = false;
+        } else if (request.hasMoreSims()) {
+            // Don't wait out the hedge deadline once the attempt has actually failed
+            request.cancelPendingAttempt();
+            metrics.failovers.incrementAndGet();
+            executor.execute(launchTask(request));
+            report = false;
+        } else {
+            report = outstanding == 0 && request.awaitRetry() && retryOrFail(request, sms.getResultCode());
+            if (report) {
+                coalescer.onFinalStatus(request.requestId, false, null);
+            }
+        }
+        removeIfFinished(request);
+        return report;
+    }
+
+    // The recipient may not take data SMS at all, so one failure is enough to send the text instead
+    private boolean fallBackToText(SmsRequest request, int subscriptionId) {
+        if (!request.fallBackToText()) {
+            return false;
+        }
+        SosTracer.record(SosTracer.DATA_FALLBACK, request.requestId, subscriptionId);
+        return true;
+    }
+
+    private void removeIfFinished(SmsRequest request) {
+        if (request.isFinished()) {
+            activeRequests.remove(request.requestId);
+        }
+    }
+
+    private void purgeStaleRequests(long now) {
+        Iterator<SmsRequest> iterator = activeRequests.values().iterator();
+        while (iterator.hasNext()) {
+            SmsRequest request = iterator.next();
+            if (now - request.createdAtMs > STALE_REQUEST_MS) {
+                if (request.settle()) {
+                    metrics.failed.incrementAndGet();
+                    journal.recordFailed(request.requestId);
+                    coalescer.onFinalStatus(request.requestId, false, null);
+                }
+                retryScheduler.cancel(request.requestId);
+                iterator.remove();
+            }
+        }
+    }
+
+    private void reportFailure(long requestId, long batchId, String phoneNumber, int subscriptionId,
+            String errorReason) {
+        coalescer.onFinalStatus(requestId, false, null);
+        Map<String, Object> statusData = new HashMap<>();
+        statusData.put("success", false);
+        statusData.put("requestId", requestId);
+        if (batchId != -1) {
+            statusData.put("batchId", batchId);
+        }
+        statusData.put("phoneNumber", phoneNumber);
+        statusData.put("simId", subscriptionId);
+        statusData.put("errorReason", errorReason);
+        statusData.put("isRetry", false);
+        broadcastBus.publishFailure(requestId, statusData);
+    }
+
+    /** The status reported for a completed send; failures add their errorReason. */
+    static Map<String, Object> sentStatus(SmsInFlightRegistry.OutboundSms sms) {
+        Map<String, Object> statusData = new HashMap<>();
+        statusData.put("success", sms.getResultCode() == Activity.RESULT_OK);
+        statusData.put("requestId", sms.requestId);
+        statusData.put("messageId", sms.messageId);
+        statusData.put("partCount", sms.getPartCount());
+        statusData.put("firstPartLatencyMs", sms.getFirstPartLatencyMs());
+        statusData.put("lastPartLatencyMs", sms.getLastPartLatencyMs());
+        statusData.put("failedPartIndex", sms.getFailedPartIndex());
+        if (sms.batchId != -1) {
+            statusData.put("batchId", sms.batchId);
+        }
+        statusData.put("phoneNumber", sms.phoneNumber);
+        statusData.put("simId", sms.subscriptionId);
+        statusData.put("isRetry", sms.retryAttempt > 0);
+        return statusData;
+    }
+
+    /** Active subscriptions ordered by send health, best first. */
+    List<Integer> getRankedSubscriptionIds() {
+        return simHealth.rank(getActiveSubscriptionIds());
+    }
+
+    List<Integer> getActiveSubscriptionIds() {
+        return subscriptions.snapshot().subscriptionIds;
+    }
+
+    private boolean sendSmsWithSubscription(SmsRequest request, int subscriptionId) {
+        int attempt = request.beginAttempt();
+        metrics.attempts.incrementAndGet();
+        SmsInFlightRegistry.OutboundSms sms = inFlight.register(request.requestId, request.batchId,
+                request.phoneNumber, request.message, subscriptionId, false, attempt, request.firstSim());
+        try {
+            SmsManager smsManager;
+            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.LOLLIPOP_MR1) {
+                smsManager = SmsManager.getSmsManagerForSubscriptionId(subscriptionId);
+            } else {
+                smsManager = SmsManager.getDefault();
+            }
+
+            send(smsManager, sms, request);
+            SosTracer.record(SosTracer.ATTEMPT_SENT, request.requestId, sms.messageId, subscriptionId);
+            return true;
+        } catch (Exception e) {
+            inFlight.remove(sms.messageId);
+            request.abortAttempt();
+            Log.e(TAG, "Error sending SMS with subscription ID " + subscriptionId + ": " + e.getMessage());
+            // The caller's next SIM is then the first one again, with the text
+            fallBackToText(request, subscriptionId);
+            return false;
+        }
+    }
+
+    private boolean sendSmsWithDefaultManager(SmsRequest request) {
+        int attempt = request.beginAttempt();
+        metrics.attempts.incrementAndGet();
+        SmsInFlightRegistry.OutboundSms sms = inFlight.register(request.requestId, request.batchId,
+                request.phoneNumber, request.message, -1, true, attempt, request.firstSim());
+        try {
+            send(SmsManager.getDefault(), sms, request);
+            SosTracer.record(SosTracer.ATTEMPT_SENT, request.requestId, sms.messageId, -1);
+            return true;
+        } catch (Exception e) {
+            inFlight.remove(sms.messageId);
+            request.abortAttempt();
+            Log.e(TAG, "Error sending SMS with default SmsManager: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Only the message id goes into the intent; the receiver looks up the rest in the registry
+    private PendingIntent createStatusIntent(String action, long messageId, int partIndex) {
+        Intent statusIntent = new Intent(action);
+        // Package-scoped; SmsBroadcastBus receives it
+        statusIntent.setPackage(context.getPackageName());
+        statusIntent.putExtra(EXTRA_MESSAGE_ID, messageId);
+        statusIntent.putExtra(EXTRA_PART_INDEX, partIndex);
+
+        int flags = PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE;
+        if (ACTION_SMS_DELIVERED.equals(action)
+                && android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.S) {
+            // The platform fills in the status report PDU, which an immutable intent would drop
+            flags = PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_MUTABLE;
+        }
+        return PendingIntent.getBroadcast(context, inFlight.nextRequestCode(), statusIntent, flags);
+    }
+
+    private void send(SmsManager smsManager, SmsInFlightRegistry.OutboundSms sms, SmsRequest request) {
+        byte[] dataPayload = request.dataPayload();
+        if (dataPayload == null) {
+            sendText(smsManager, sms, request);
+            return;
+        }
+        // A data SMS to the SOS port always fits one PDU
+        sms.setPartCount(1);
+        smsManager.sendDataMessage(sms.phoneNumber, null, SosDataCodec.PORT, dataPayload,
+                createStatusIntent(ACTION_SMS_SENT, sms.messageId, 0),
+                createStatusIntent(ACTION_SMS_DELIVERED, sms.messageId, 0));
+    }
+
+    private void sendText(SmsManager smsManager, SmsInFlightRegistry.OutboundSms sms, SmsRequest request) {
+        // Pick the layout with the fewest PDUs; every message of it is still split by the platform
+        GsmSegmentPlanner.Layout layout = GsmSegmentPlanner.plan(sms.message, splitNonGsm, transliterate);
+        if (!GsmSegmentPlanner.Layout.AS_IS.equals(layout.kind)) {
+            SosTracer.record(SosTracer.MESSAGE_PLANNED, sms.messageId, layout.messages.size(), layout.totalParts);
+        }
+        // Messages an earlier attempt already handed over are not sent again
+        int firstMessage = request.textResumeIndex();
+        if (firstMessage >= layout.messages.size()) {
+            // The layout changed since (planning settings were updated); send it whole
+            firstMessage = 0;
+        }
+        List<ArrayList<String>> texts = new ArrayList<>(layout.messages.size() - firstMessage);
+        int partCount = 0;
+        for (String text : layout.messages.subList(firstMessage, layout.messages.size())) {
+            ArrayList<String> messageParts = smsManager.divideMessage(text);
+            if (messageParts.isEmpty()) {
+                messageParts.add(text);
+            }
+            texts.add(messageParts);
+            partCount += messageParts.size();
+        }
+        // All parts of all remaining messages are folded into this one send
+        sms.setPartCount(partCount);
+
+        int firstPart = 0;
+        int handed = firstMessage;
+        for (ArrayList<String> messageParts : texts) {
+            if (messageParts.size() > 1) {
+                // Multi-part message; each part reports separately and the receiver folds them together
+                ArrayList<PendingIntent> sentIntents = new ArrayList<>(messageParts.size());
+                ArrayList<PendingIntent> deliveredIntents = new ArrayList<>(messageParts.size());
+                for (int i = 0; i < messageParts.size(); i++) {
+                    sentIntents.add(createStatusIntent(ACTION_SMS_SENT, sms.messageId, firstPart + i));
+                    deliveredIntents.add(createStatusIntent(ACTION_SMS_DELIVERED, sms.messageId, firstPart + i));
+                }
+                smsManager.sendMultipartTextMessage(sms.phoneNumber, null, messageParts, sentIntents,
+                        deliveredIntents);
+            } else {
+                // Single message
+                smsManager.sendTextMessage(sms.phoneNumber, null, messageParts.get(0),
+                        createStatusIntent(ACTION_SMS_SENT, sms.messageId, firstPart),
+                        createStatusIntent(ACTION_SMS_DELIVERED, sms.messageId, firstPart));
+            }
+            firstPart += messageParts.size();
+            handed++;
+            if (handed < layout.messages.size()) {
+                // If a later message throws, the next attempt resumes after this one
+                request.setTextResumeIndex(handed);
+            }
+        }
+        // The whole remainder went out; a hedge or retry attempt sends that same remainder again
+        request.setTextResumeIndex(firstMessage);
+    }
+}
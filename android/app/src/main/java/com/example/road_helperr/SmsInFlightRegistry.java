@@ -0,0 +1,208 @@
+package com.example.road_helperr;
+
+import android.app.Activity;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-flight outbound SMS keyed by a monotonic message id.
+ *
+ * Only the message id (and part index) travels through the sent PendingIntent;
+ * everything else about the send (recipient, body, SIM, retry state) stays
+ * here, so statuses are matched exactly and the broadcast payload stays small.
+ */
+final class SmsInFlightRegistry {
+    // Sends that never report back are dropped after this long
+    private static final long STALE_AFTER_MS = 10 * 60 * 1000;
+    // Delivery reports can lag far behind (recipient's phone off) or never come at all
+    private static final long DELIVERY_STALE_AFTER_MS = 60 * 60 * 1000;
+    private static final long PURGE_INTERVAL_MS = 60 * 1000;
+
+    static final class OutboundSms {
+        final long messageId;
+        final long requestId;
+        final long batchId;
+        final String phoneNumber;
+        final String message;
+        final int subscriptionId;
+        final boolean defaultManager;
+        final int retryAttempt;
+        final int originalSimId;
+        final long submittedAtMs;
+
+        // Multipart state; every part has its own sent intent and reports here
+        private boolean[] partReported = new boolean[1];
+        private int partsReported;
+        private long firstPartAtMs;
+        private long lastPartAtMs;
+        private int failedPartIndex = -1;
+        private int resultCode = Activity.RESULT_OK;
+
+        // Delivery state; every part also has its own delivered intent
+        private boolean[] partDelivered = new boolean[1];
+        private int deliveriesReported;
+        private long lastDeliveryAtMs;
+        private boolean deliveryFailed;
+
+        OutboundSms(long messageId, long requestId, long batchId, String phoneNumber, String message,
+                int subscriptionId, boolean defaultManager, int retryAttempt, int originalSimId,
+                long submittedAtMs) {
+            this.messageId = messageId;
+            this.requestId = requestId;
+            this.batchId = batchId;
+            this.phoneNumber = phoneNumber;
+            this.message = message;
+            this.subscriptionId = subscriptionId;
+            this.defaultManager = defaultManager;
+            this.retryAttempt = retryAttempt;
+            this.originalSimId = originalSimId;
+            this.submittedAtMs = submittedAtMs;
+        }
+
+        synchronized void setPartCount(int partCount) {
+            partReported = new boolean[Math.max(partCount, 1)];
+            partDelivered = new boolean[Math.max(partCount, 1)];
+        }
+
+        /**
+         * Folds one part's sent result into the message. Returns true exactly once,
+         * when the last outstanding part has reported; duplicates are ignored.
+         */
+        synchronized boolean onPartResult(int partIndex, int partResultCode, long nowMs) {
+            if (partIndex < 0 || partIndex >= partReported.length || partReported[partIndex]) {
+                return false;
+            }
+            partReported[partIndex] = true;
+            if (partsReported++ == 0) {
+                firstPartAtMs = nowMs;
+            }
+            lastPartAtMs = nowMs;
+            if (partResultCode != Activity.RESULT_OK && failedPartIndex == -1) {
+                failedPartIndex = partIndex;
+                resultCode = partResultCode;
+            }
+            return partsReported == partReported.length;
+        }
+
+        synchronized int getPartCount() {
+            return partReported.length;
+        }
+
+        synchronized int getResultCode() {
+            return resultCode;
+        }
+
+        synchronized int getFailedPartIndex() {
+            return failedPartIndex;
+        }
+
+        synchronized long getFirstPartLatencyMs() {
+            return firstPartAtMs - submittedAtMs;
+        }
+
+        synchronized long getLastPartLatencyMs() {
+            return lastPartAtMs - submittedAtMs;
+        }
+
+        /**
+         * Folds one part's delivery report into the message. Returns true exactly
+         * once, when every part has a delivery report; duplicates are ignored.
+         */
+        synchronized boolean onPartDelivered(int partIndex, boolean delivered, long nowMs) {
+            if (partIndex < 0 || partIndex >= partDelivered.length || partDelivered[partIndex]) {
+                return false;
+            }
+            partDelivered[partIndex] = true;
+            lastDeliveryAtMs = nowMs;
+            if (!delivered) {
+                deliveryFailed = true;
+            }
+            return ++deliveriesReported == partDelivered.length;
+        }
+
+        synchronized boolean isDelivered() {
+            return deliveriesReported == partDelivered.length && !deliveryFailed;
+        }
+
+        synchronized long getDeliveryLatencyMs() {
+            return lastDeliveryAtMs - submittedAtMs;
+        }
+    }
+
+    private final ConcurrentHashMap<Long, OutboundSms> inFlight = new ConcurrentHashMap<>();
+    // Sent messages still waiting for their delivery report
+    private final ConcurrentHashMap<Long, OutboundSms> awaitingDelivery = new ConcurrentHashMap<>();
+
+    // Seeded from the wall clock so ids and request codes from a previous process
+    // (whose PendingIntents may still be pending) are not reused after a restart
+    private final AtomicLong nextMessageId = new AtomicLong(System.currentTimeMillis() << 12);
+    private final AtomicInteger nextRequestCode = new AtomicInteger((int) (System.currentTimeMillis() / 1000));
+    private final AtomicLong lastPurgeMs = new AtomicLong();
+
+    OutboundSms register(long requestId, long batchId, String phoneNumber, String message, int subscriptionId,
+            boolean defaultManager, int retryAttempt, int originalSimId) {
+        long now = System.currentTimeMillis();
+        purgeStale(now);
+
+        OutboundSms sms = new OutboundSms(nextMessageId.getAndIncrement(), requestId, batchId, phoneNumber,
+                message, subscriptionId, defaultManager, retryAttempt, originalSimId, now);
+        inFlight.put(sms.messageId, sms);
+        return sms;
+    }
+
+    OutboundSms get(long messageId) {
+        return inFlight.get(messageId);
+    }
+
+    OutboundSms remove(long messageId) {
+        return inFlight.remove(messageId);
+    }
+
+    /** Keeps a sent message around until its delivery report arrives. */
+    void awaitDelivery(OutboundSms sms) {
+        awaitingDelivery.put(sms.messageId, sms);
+    }
+
+    OutboundSms getAwaitingDelivery(long messageId) {
+        return awaitingDelivery.get(messageId);
+    }
+
+    OutboundSms removeAwaitingDelivery(long messageId) {
+        return awaitingDelivery.remove(messageId);
+    }
+
+    /** Returns a PendingIntent request code that no other live send is using. */
+    int nextRequestCode() {
+        return nextRequestCode.getAndIncrement();
+    }
+
+    int size() {
+        return inFlight.size();
+    }
+
+    int awaitingDeliveryCount() {
+        return awaitingDelivery.size();
+    }
+
+    private void purgeStale(long now) {
+        long last = lastPurgeMs.get();
+        if (now - last < PURGE_INTERVAL_MS || !lastPurgeMs.compareAndSet(last, now)) {
+            return;
+        }
+        Iterator<OutboundSms> iterator = inFlight.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().submittedAtMs > STALE_AFTER_MS) {
+                iterator.remove();
+            }
+        }
+        iterator = awaitingDelivery.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().submittedAtMs > DELIVERY_STALE_AFTER_MS) {
+                iterator.remove();
+            }
+        }
+    }
+}
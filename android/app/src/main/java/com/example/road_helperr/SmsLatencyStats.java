@@ -0,0 +1,58 @@
+package com.example.road_helperr;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * End-to-end SMS latencies per SIM and carrier: submit to sent (radio
+ * accepted) and submit to delivered (recipient's phone acknowledged).
+ */
+final class SmsLatencyStats {
+    private final ConcurrentHashMap<String, LatencyHistogram> sent = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram> delivered = new ConcurrentHashMap<>();
+
+    /** Histogram key such as "sim3/Vodafone", or "default" for the default SmsManager. */
+    static String key(int subscriptionId, String carrierName) {
+        if (subscriptionId < 0) {
+            return "default";
+        }
+        return "sim" + subscriptionId + "/" + (carrierName != null ? carrierName : "Unknown");
+    }
+
+    void recordSent(String key, long latencyMs) {
+        histogram(sent, key).record(latencyMs);
+    }
+
+    void recordDelivered(String key, long latencyMs) {
+        histogram(delivered, key).record(latencyMs);
+    }
+
+    /** {sent: {key: stats}, delivered: {key: stats}}, optionally clearing the histograms. */
+    Map<String, Object> snapshot(boolean reset) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("sent", toMap(sent, reset));
+        map.put("delivered", toMap(delivered, reset));
+        return map;
+    }
+
+    private static LatencyHistogram histogram(ConcurrentHashMap<String, LatencyHistogram> histograms, String key) {
+        LatencyHistogram histogram = histograms.get(key);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            LatencyHistogram existing = histograms.putIfAbsent(key, histogram);
+            if (existing != null) {
+                histogram = existing;
+            }
+        }
+        return histogram;
+    }
+
+    private static Map<String, Object> toMap(Map<String, LatencyHistogram> histograms, boolean reset) {
+        Map<String, Object> map = new HashMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            map.put(entry.getKey(), entry.getValue().snapshot(reset).toMap());
+        }
+        return map;
+    }
+}
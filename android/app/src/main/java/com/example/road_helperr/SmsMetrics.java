@@ -0,0 +1,66 @@
+package com.example.road_helperr;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters for the native SMS path, exposed through getSmsMetrics.
+ *
+ * Everything is a preallocated atomic, so counting on the send and receive
+ * paths never allocates or locks; maps are only built when a snapshot is read.
+ */
+final class SmsMetrics {
+    // Same buckets as SimHealthTracker.codeBucket
+    private static final String[] CODE_NAMES = {
+            "ok", "genericFailure", "noService", "nullPdu", "radioOff", "other"
+    };
+
+    final AtomicLong enqueued = new AtomicLong();
+    final AtomicLong replayed = new AtomicLong();
+    final AtomicLong attempts = new AtomicLong();
+    final AtomicLong sent = new AtomicLong();
+    final AtomicLong failed = new AtomicLong();
+    final AtomicLong delivered = new AtomicLong();
+    final AtomicLong retries = new AtomicLong();
+    final AtomicLong hedgesFired = new AtomicLong();
+    final AtomicLong failovers = new AtomicLong();
+    final AtomicLong duplicatesSuppressed = new AtomicLong();
+    final AtomicLong coalesced = new AtomicLong();
+    final AtomicLong rateLimited = new AtomicLong();
+    // Per-attempt sent results, bucketed by result code
+    private final AtomicLongArray attemptResults = new AtomicLongArray(CODE_NAMES.length);
+
+    void recordAttemptResult(int resultCode) {
+        attemptResults.incrementAndGet(SimHealthTracker.codeBucket(resultCode));
+    }
+
+    /** Counter values, optionally zeroing them; queue gauges are added by the caller. */
+    Map<String, Object> snapshot(boolean reset) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("enqueued", read(enqueued, reset));
+        map.put("replayed", read(replayed, reset));
+        map.put("attempts", read(attempts, reset));
+        map.put("sent", read(sent, reset));
+        map.put("failed", read(failed, reset));
+        map.put("delivered", read(delivered, reset));
+        map.put("retries", read(retries, reset));
+        map.put("hedgesFired", read(hedgesFired, reset));
+        map.put("failovers", read(failovers, reset));
+        map.put("duplicatesSuppressed", read(duplicatesSuppressed, reset));
+        map.put("coalesced", read(coalesced, reset));
+        map.put("rateLimited", read(rateLimited, reset));
+
+        Map<String, Object> results = new HashMap<>();
+        for (int i = 0; i < CODE_NAMES.length; i++) {
+            results.put(CODE_NAMES[i], reset ? attemptResults.getAndSet(i, 0) : attemptResults.get(i));
+        }
+        map.put("attemptResults", results);
+        return map;
+    }
+
+    private static long read(AtomicLong counter, boolean reset) {
+        return reset ? counter.getAndSet(0) : counter.get();
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.road_helperr;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+/** Resumes SOS messages that were still queued when the device shut down. */
+public class SmsOutboxBootReceiver extends BroadcastReceiver {
+    private static final String TAG = "SmsOutboxBootReceiver";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
+            Log.d(TAG, "Boot completed, replaying SMS outbox");
+            SmsDispatcher.getInstance(context).replayOutbox();
+        }
+    }
+}
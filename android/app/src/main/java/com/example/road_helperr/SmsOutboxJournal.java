@@ -0,0 +1,434 @@
+package com.example.road_helperr;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only on-disk outbox for outgoing SMS requests.
+ *
+ * Every state change (enqueued, part sent, sent, delivered, failed) is appended
+ * as a CRC-checked record to a memory-mapped segment file. A record is in the
+ * page cache as soon as it is written, so it survives the process being
+ * killed; the segment is forced to disk in groups shortly afterwards rather
+ * than once per record, on an executor that does nothing else. When a segment fills up, the requests that are still
+ * unfinished are copied into a fresh segment and the old ones are deleted.
+ *
+ * Record layout: int payload length, int CRC32 of the payload, payload. A zero
+ * length (the file is zero-filled) or a bad checksum ends a segment.
+ */
+final class SmsOutboxJournal {
+    private static final String TAG = "SmsOutboxJournal";
+    private static final String DIR_NAME = "sms_outbox";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final int SEGMENT_SIZE = 256 * 1024;
+    private static final int HEADER_SIZE = 8;
+
+    // Records written within this window share one force() to disk
+    private static final long FLUSH_DELAY_MS = 200;
+
+    // Unfinished requests older than this are given up instead of replayed; an
+    // SOS carries the location and battery level from when it was written
+    private static final long MAX_REPLAY_AGE_MS = 15 * 60 * 1000;
+
+    private static final byte TYPE_ENQUEUE = 1;
+    private static final byte TYPE_PART_SENT = 2;
+    private static final byte TYPE_SENT = 3;
+    private static final byte TYPE_DELIVERED = 4;
+    private static final byte TYPE_FAILED = 5;
+
+    /** A request that has been enqueued but not yet sent or failed. */
+    static final class Entry {
+        final long requestId;
+        final long batchId;
+        final String phoneNumber;
+        final String message;
+        final SmsRequest.Mode mode;
+        final long enqueuedAtMs;
+
+        // Parts confirmed so far, per send attempt (message id)
+        private final Map<Long, boolean[]> sentParts = new HashMap<>();
+        private boolean fullySent;
+        // Read back from disk, i.e. left over from an earlier process
+        private boolean recovered;
+
+        Entry(long requestId, long batchId, String phoneNumber, String message, SmsRequest.Mode mode,
+                long enqueuedAtMs) {
+            this.requestId = requestId;
+            this.batchId = batchId;
+            this.phoneNumber = phoneNumber;
+            this.message = message;
+            this.mode = mode;
+            this.enqueuedAtMs = enqueuedAtMs;
+        }
+
+        void onPartSent(long messageId, int partIndex, int partCount) {
+            boolean[] parts = sentParts.get(messageId);
+            if (parts == null) {
+                parts = new boolean[Math.max(partCount, 1)];
+                sentParts.put(messageId, parts);
+            }
+            if (partIndex < 0 || partIndex >= parts.length) {
+                return;
+            }
+            parts[partIndex] = true;
+            for (boolean sent : parts) {
+                if (!sent) {
+                    return;
+                }
+            }
+            // Every part of one attempt went out; the sent record just didn't make it to disk
+            fullySent = true;
+        }
+    }
+
+    private final File directory;
+    private final ScheduledExecutorService flushExecutor;
+    private final LinkedHashMap<Long, Entry> live = new LinkedHashMap<>();
+
+    private boolean opened;
+    private MappedByteBuffer segment;
+    private File segmentFile;
+    private long segmentSequence;
+    private boolean flushScheduled;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            MappedByteBuffer toFlush;
+            synchronized (SmsOutboxJournal.this) {
+                flushScheduled = false;
+                toFlush = segment;
+            }
+            // Outside the lock so appends never wait on the disk
+            if (toFlush != null) {
+                toFlush.force();
+            }
+        }
+    };
+
+    SmsOutboxJournal(Context context, ScheduledExecutorService flushExecutor) {
+        this.directory = new File(context.getFilesDir(), DIR_NAME);
+        this.flushExecutor = flushExecutor;
+    }
+
+    /** Opens the journal and recovers earlier segments, so the first write finds it ready. */
+    synchronized void open() {
+        ensureOpen();
+    }
+
+    synchronized void recordEnqueue(SmsRequest request) {
+        Entry entry = new Entry(request.requestId, request.batchId, request.phoneNumber, request.message,
+                request.mode, request.createdAtMs);
+        ensureOpen();
+        live.put(entry.requestId, entry);
+        append(encodeEnqueue(entry));
+    }
+
+    synchronized void recordPartSent(long requestId, long messageId, int partIndex, int partCount) {
+        ensureOpen();
+        Entry entry = live.get(requestId);
+        if (entry == null) {
+            return;
+        }
+        entry.onPartSent(messageId, partIndex, partCount);
+        append(encodePartSent(requestId, messageId, partIndex, partCount));
+    }
+
+    synchronized void recordSent(long requestId) {
+        recordTerminal(TYPE_SENT, requestId);
+    }
+
+    synchronized void recordDelivered(long requestId) {
+        ensureOpen();
+        append(encodeHeader(TYPE_DELIVERED, requestId).toByteArray());
+    }
+
+    synchronized void recordFailed(long requestId) {
+        recordTerminal(TYPE_FAILED, requestId);
+    }
+
+    /**
+     * Returns the requests left unfinished by an earlier process, to be sent
+     * again. Requests whose parts all went out are closed as sent, and those
+     * too old to matter as failed.
+     */
+    synchronized List<Entry> takeUnfinished(long nowMs) {
+        ensureOpen();
+        List<Entry> unfinished = new ArrayList<>();
+        for (Entry entry : new ArrayList<>(live.values())) {
+            if (!entry.recovered) {
+                continue;
+            }
+            if (entry.fullySent) {
+                recordTerminal(TYPE_SENT, entry.requestId);
+            } else if (nowMs - entry.enqueuedAtMs > MAX_REPLAY_AGE_MS) {
+                Log.w(TAG, "Dropping expired SMS request " + entry.requestId);
+                recordTerminal(TYPE_FAILED, entry.requestId);
+            } else {
+                unfinished.add(entry);
+            }
+        }
+        return unfinished;
+    }
+
+    private void recordTerminal(byte type, long requestId) {
+        ensureOpen();
+        if (live.remove(requestId) != null) {
+            append(encodeHeader(type, requestId).toByteArray());
+        }
+    }
+
+    private void ensureOpen() {
+        if (opened) {
+            return;
+        }
+        opened = true;
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create " + directory);
+            }
+            File[] files = listSegments();
+            for (File file : files) {
+                segmentSequence = Math.max(segmentSequence, sequenceOf(file));
+                recover(file);
+            }
+            Log.d(TAG, "Recovered " + live.size() + " unfinished SMS from " + files.length + " segments");
+            // Start from a compacted segment so old segments never accumulate
+            roll(0);
+        } catch (IOException e) {
+            // Sending must not depend on the journal; carry on without durability
+            Log.e(TAG, "Outbox journal unavailable: " + e.getMessage());
+            segment = null;
+        }
+    }
+
+    private void append(byte[] payload) {
+        if (segment == null) {
+            return;
+        }
+        try {
+            if (segment.remaining() < HEADER_SIZE + payload.length) {
+                roll(HEADER_SIZE + payload.length);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            segment.putInt(payload.length);
+            segment.putInt((int) crc.getValue());
+            segment.put(payload);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                flushExecutor.schedule(flushTask, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error appending to outbox journal: " + e.getMessage());
+            segment = null;
+        }
+    }
+
+    /** Starts a new segment holding only the live requests, then deletes every older segment. */
+    private void roll(int reserveBytes) throws IOException {
+        List<byte[]> records = new ArrayList<>();
+        int liveBytes = 0;
+        for (Entry entry : live.values()) {
+            byte[] enqueue = encodeEnqueue(entry);
+            records.add(enqueue);
+            liveBytes += HEADER_SIZE + enqueue.length;
+            for (Map.Entry<Long, boolean[]> parts : entry.sentParts.entrySet()) {
+                for (int i = 0; i < parts.getValue().length; i++) {
+                    if (parts.getValue()[i]) {
+                        byte[] part = encodePartSent(entry.requestId, parts.getKey(), i, parts.getValue().length);
+                        records.add(part);
+                        liveBytes += HEADER_SIZE + part.length;
+                    }
+                }
+            }
+        }
+
+        if (segment != null) {
+            segment.force();
+        }
+        File file = new File(directory, SEGMENT_PREFIX + (++segmentSequence) + SEGMENT_SUFFIX);
+        int size = Math.max(SEGMENT_SIZE, 2 * (liveBytes + reserveBytes));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(size);
+            segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            raf.close();
+        }
+        segmentFile = file;
+        for (byte[] record : records) {
+            CRC32 crc = new CRC32();
+            crc.update(record);
+            segment.putInt(record.length);
+            segment.putInt((int) crc.getValue());
+            segment.put(record);
+        }
+        // The compacted copy must be on disk before the originals go away
+        segment.force();
+
+        for (File old : listSegments()) {
+            if (!old.equals(segmentFile) && !old.delete()) {
+                Log.w(TAG, "Could not delete old outbox segment " + old.getName());
+            }
+        }
+    }
+
+    private void recover(File file) throws IOException {
+        MappedByteBuffer buffer;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                // Torn write at the tail; nothing after it was acknowledged
+                Log.w(TAG, "Checksum mismatch in " + file.getName() + ", ignoring the rest");
+                break;
+            }
+            apply(payload);
+        }
+    }
+
+    private void apply(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        long requestId = in.readLong();
+        long timeMs = in.readLong();
+        switch (type) {
+            case TYPE_ENQUEUE:
+                long batchId = in.readLong();
+                String mode = in.readUTF();
+                String phoneNumber = in.readUTF();
+                String message = in.readUTF();
+                Entry recovered = new Entry(requestId, batchId, phoneNumber, message,
+                        SmsRequest.Mode.fromWireName(mode, SmsRequest.Mode.HEDGED), timeMs);
+                recovered.recovered = true;
+                live.put(requestId, recovered);
+                break;
+            case TYPE_PART_SENT:
+                Entry entry = live.get(requestId);
+                if (entry != null) {
+                    entry.onPartSent(in.readLong(), in.readInt(), in.readInt());
+                }
+                break;
+            case TYPE_SENT:
+            case TYPE_FAILED:
+                live.remove(requestId);
+                break;
+            default:
+                // Delivery reports and unknown types don't change what is unfinished
+                break;
+        }
+    }
+
+    private static ByteArrayOutputStream encodeHeader(byte type, long requestId) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(type);
+            out.writeLong(requestId);
+            out.writeLong(System.currentTimeMillis());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes;
+    }
+
+    private static byte[] encodeEnqueue(Entry entry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + entry.message.length());
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(TYPE_ENQUEUE);
+            out.writeLong(entry.requestId);
+            out.writeLong(entry.enqueuedAtMs);
+            out.writeLong(entry.batchId);
+            out.writeUTF(entry.mode.wireName);
+            out.writeUTF(entry.phoneNumber);
+            out.writeUTF(entry.message);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodePartSent(long requestId, long messageId, int partIndex, int partCount) {
+        ByteArrayOutputStream bytes = encodeHeader(TYPE_PART_SENT, requestId);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeLong(messageId);
+            out.writeInt(partIndex);
+            out.writeInt(partCount);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private File[] listSegments() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+        List<File> segments = new ArrayList<>();
+        for (File file : files) {
+            if (sequenceOf(file) >= 0) {
+                segments.add(file);
+            }
+        }
+        File[] sorted = segments.toArray(new File[0]);
+        Arrays.sort(sorted, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(sequenceOf(a), sequenceOf(b));
+            }
+        });
+        return sorted;
+    }
+
+    private static long sequenceOf(File file) {
+        String name = file.getName();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.road_helperr;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Token buckets per subscription that pace outbound SMS.
+ *
+ * Each SIM (one carrier account) gets a bucket of {@code burst} permits that
+ * refills by one every {@code refillIntervalMs}. A handful of contacts goes
+ * out at once; a larger batch is spread out just enough that the carrier does
+ * not start dropping it. Permits are reserved rather than waited for: the
+ * caller gets the delay before its permit is valid and schedules the send.
+ */
+final class SmsRateLimiter {
+    static final int DEFAULT_BURST = 5;
+    static final long DEFAULT_REFILL_INTERVAL_MS = 1500;
+
+    // Per subscription, when the next permit would be valid if the bucket never held more than one;
+    // kept in whole milliseconds so a permit is valid exactly on its refill boundary
+    private final Map<Integer, Long> nextPermitAtMs = new HashMap<>();
+    private int burst = DEFAULT_BURST;
+    private long refillIntervalMs = DEFAULT_REFILL_INTERVAL_MS;
+
+    synchronized void configure(int burst, long refillIntervalMs) {
+        this.burst = Math.max(1, burst);
+        this.refillIntervalMs = Math.max(0, refillIntervalMs);
+        nextPermitAtMs.clear();
+    }
+
+    /**
+     * Takes a permit for the subscription and returns how many milliseconds
+     * the caller must wait before using it; 0 means send now. Waiting callers
+     * are spaced one refill interval apart in the order they reserved.
+     */
+    synchronized long reserve(int subscriptionId, long nowMs) {
+        if (refillIntervalMs == 0) {
+            return 0;
+        }
+        Long scheduled = nextPermitAtMs.get(subscriptionId);
+        // An idle bucket holds at most burst permits, which is where it starts too
+        long permitAtMs = scheduled != null ? Math.max(scheduled, nowMs) : nowMs;
+        nextPermitAtMs.put(subscriptionId, permitAtMs + refillIntervalMs);
+        // Up to burst permits may be taken ahead of their slot
+        return Math.max(0, permitAtMs - (burst - 1) * refillIntervalMs - nowMs);
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.road_helperr;
+
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * One logical SMS to one recipient, possibly sent as several attempts on
+ * different SIMs. The first confirmed attempt settles the request; anything
+ * that reports after that is suppressed.
+ */
+final class SmsRequest {
+
+    /** How attempts on additional SIMs are launched. */
+    enum Mode {
+        // Best SIM first; the next SIM only if no confirmation arrives before an adaptive deadline
+        HEDGED("hedged"),
+        // Best SIM first; the next SIM only after a failure result
+        FAILOVER_ONLY("failover-only"),
+        // Every SIM at once; each SIM's rate limiter is the only spacing
+        BROADCAST_ALL("broadcast-all");
+
+        final String wireName;
+
+        Mode(String wireName) {
+            this.wireName = wireName;
+        }
+
+        static Mode fromWireName(String name, Mode fallback) {
+            if (name != null) {
+                for (Mode mode : values()) {
+                    if (mode.wireName.equals(name)) {
+                        return mode;
+                    }
+                }
+            }
+            return fallback;
+        }
+    }
+
+    final long requestId;
+    final long batchId;
+    final String phoneNumber;
+    final String message;
+    final Mode mode;
+    final long createdAtMs;
+
+    private List<Integer> simOrder;
+    private int nextSimIndex;
+    private int retryRound;
+    private int launchedInRound;
+    private int launchedAttempts;
+    private int outstandingAttempts;
+    private boolean defaultManagerTried;
+    private boolean waitingForRetry;
+    private boolean settled;
+    private ScheduledFuture<?> pendingAttempt;
+    // Binary SOS sent as a data SMS instead of the text; null for text requests and after a fallback
+    private byte[] dataPayload;
+    // Messages of a split text already handed to the platform by an attempt that then failed
+    private int textMessagesHanded;
+
+    SmsRequest(long requestId, long batchId, String phoneNumber, String message, byte[] dataPayload, Mode mode,
+            List<Integer> simOrder, long createdAtMs) {
+        this.requestId = requestId;
+        this.batchId = batchId;
+        this.phoneNumber = phoneNumber;
+        this.message = message;
+        this.dataPayload = dataPayload;
+        this.mode = mode;
+        this.simOrder = simOrder;
+        this.createdAtMs = createdAtMs;
+    }
+
+    synchronized byte[] dataPayload() {
+        return dataPayload;
+    }
+
+    /**
+     * Switches a data SMS request to its text message and starts over on the
+     * first SIM. Returns false if the request already sends text or is settled.
+     */
+    synchronized boolean fallBackToText() {
+        if (dataPayload == null || settled) {
+            return false;
+        }
+        dataPayload = null;
+        nextSimIndex = 0;
+        launchedInRound = 0;
+        defaultManagerTried = false;
+        return true;
+    }
+
+    /** Returns the next untried SIM, or null once every SIM has been used. */
+    synchronized Integer nextSim() {
+        return nextSimIndex < simOrder.size() ? simOrder.get(nextSimIndex++) : null;
+    }
+
+    synchronized boolean hasMoreSims() {
+        return nextSimIndex < simOrder.size();
+    }
+
+    synchronized int firstSim() {
+        return simOrder.isEmpty() ? -1 : simOrder.get(0);
+    }
+
+    /** The default SmsManager is only a last resort when no SIM accepted the send command. */
+    synchronized boolean claimDefaultManager() {
+        if (defaultManagerTried || launchedInRound > 0) {
+            return false;
+        }
+        defaultManagerTried = true;
+        return true;
+    }
+
+    /** Reserves an attempt slot and returns its index within the request. */
+    synchronized int beginAttempt() {
+        outstandingAttempts++;
+        launchedInRound++;
+        return launchedAttempts++;
+    }
+
+    /** Undoes {@link #beginAttempt()} when the send command itself failed. */
+    synchronized void abortAttempt() {
+        outstandingAttempts--;
+        launchedInRound--;
+        launchedAttempts--;
+    }
+
+    /** Index of the first message of the planned text layout that still has to be sent. */
+    synchronized int textResumeIndex() {
+        return textMessagesHanded;
+    }
+
+    /**
+     * Records how far an attempt got through the layout before its send command
+     * failed, so the next attempt only sends what never left the phone.
+     */
+    synchronized void setTextResumeIndex(int index) {
+        textMessagesHanded = index;
+    }
+
+    /** Keeps the request open, like an outstanding attempt, while a send waits for a rate-limit permit. */
+    synchronized void holdAttempt() {
+        outstandingAttempts++;
+    }
+
+    synchronized void releaseAttempt() {
+        outstandingAttempts--;
+    }
+
+    synchronized int retryRound() {
+        return retryRound;
+    }
+
+    /**
+     * Claims the decision on what follows a round in which every attempt failed.
+     * Returns false if the request is settled, still has something in flight or
+     * left to try, or another thread already claimed it.
+     */
+    synchronized boolean awaitRetry() {
+        if (settled || waitingForRetry || outstandingAttempts > 0 || nextSimIndex < simOrder.size()) {
+            return false;
+        }
+        waitingForRetry = true;
+        return true;
+    }
+
+    /** Starts another pass over the SIMs after every attempt of the previous one failed. */
+    synchronized void startRetryRound(List<Integer> simOrder) {
+        this.simOrder = simOrder;
+        nextSimIndex = 0;
+        launchedInRound = 0;
+        defaultManagerTried = false;
+        waitingForRetry = false;
+        retryRound++;
+    }
+
+    /** Marks one attempt as reported and returns how many are still outstanding. */
+    synchronized int finishAttempt() {
+        return --outstandingAttempts;
+    }
+
+    synchronized int outstandingAttempts() {
+        return outstandingAttempts;
+    }
+
+    synchronized void setPendingAttempt(ScheduledFuture<?> future) {
+        if (!wantsMoreAttempts()) {
+            future.cancel(false);
+        } else {
+            pendingAttempt = future;
+        }
+    }
+
+    /** Cancels a scheduled hedge/broadcast attempt; returns true if one was pending. */
+    synchronized boolean cancelPendingAttempt() {
+        if (pendingAttempt == null) {
+            return false;
+        }
+        boolean cancelled = pendingAttempt.cancel(false);
+        pendingAttempt = null;
+        return cancelled;
+    }
+
+    synchronized boolean isSettled() {
+        return settled;
+    }
+
+    /** Broadcast-all keeps sending on the remaining SIMs after the first success. */
+    synchronized boolean wantsMoreAttempts() {
+        return !settled || mode == Mode.BROADCAST_ALL;
+    }
+
+    /** True once nothing more will be launched or reported for this request. */
+    synchronized boolean isFinished() {
+        return settled && outstandingAttempts == 0 && (!wantsMoreAttempts() || !hasMoreSims());
+    }
+
+    /** Settles the request once; returns false if it was already settled. */
+    synchronized boolean settle() {
+        if (settled) {
+            return false;
+        }
+        settled = true;
+        if (!wantsMoreAttempts()) {
+            cancelPendingAttempt();
+        }
+        return true;
+    }
+}
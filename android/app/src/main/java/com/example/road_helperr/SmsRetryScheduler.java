@@ -0,0 +1,292 @@
+package com.example.road_helperr;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.telephony.PhoneStateListener;
+import android.telephony.ServiceState;
+import android.telephony.SmsManager;
+import android.telephony.TelephonyCallback;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules retry rounds for requests whose attempts failed on every SIM.
+ *
+ * State is kept per request (one message to one recipient), so retries of
+ * different messages never wait on each other. The delay depends on why the
+ * last attempt failed: no service / radio off waits until a SIM is back in
+ * service, while other failures back off exponentially with jitter.
+ */
+final class SmsRetryScheduler {
+    private static final String TAG = "SmsRetryScheduler";
+
+    static final int DEFAULT_MAX_RETRIES = 3;
+    static final long DEFAULT_BASE_DELAY_MS = 2000;
+    static final long DEFAULT_MAX_DELAY_MS = 60000;
+
+    // A request waiting for service retries anyway after this long
+    private static final long MAX_SERVICE_WAIT_MS = 2 * 60 * 1000;
+
+    // Before API 24 there is no per-subscription TelephonyManager, only the default SIM
+    private static final int DEFAULT_SIM = -1;
+
+    /** Called on the scheduler or main thread when a request should start its next round. */
+    interface Callback {
+        void onRetryDue(long requestId);
+    }
+
+    private final Context context;
+    private final ScheduledExecutorService scheduler;
+    private final Callback callback;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // requestId -> fallback timer; present while the request waits for its retry
+    private final ConcurrentHashMap<Long, ScheduledFuture<?>> pending = new ConcurrentHashMap<>();
+    // requestIds parked until some SIM reports STATE_IN_SERVICE
+    private final ConcurrentHashMap<Long, Boolean> awaitingService = new ConcurrentHashMap<>();
+    // subscriptionId -> last known in-service flag, updated from the main thread
+    private final Map<Integer, Boolean> inService = new ConcurrentHashMap<>();
+    // Registered only while some request waits for service; touched on the main thread
+    private final Map<Integer, ServiceWatch> serviceWatches = new ConcurrentHashMap<>();
+
+    /** A service-state registration and the manager it was made on, so it can be undone. */
+    private static final class ServiceWatch {
+        final TelephonyManager telephonyManager;
+        final Object listener;
+
+        ServiceWatch(TelephonyManager telephonyManager, Object listener) {
+            this.telephonyManager = telephonyManager;
+            this.listener = listener;
+        }
+    }
+
+    private volatile int maxRetries = DEFAULT_MAX_RETRIES;
+    private volatile long baseDelayMs = DEFAULT_BASE_DELAY_MS;
+    private volatile long maxDelayMs = DEFAULT_MAX_DELAY_MS;
+
+    SmsRetryScheduler(Context context, ScheduledExecutorService scheduler, Callback callback) {
+        this.context = context;
+        this.scheduler = scheduler;
+        this.callback = callback;
+    }
+
+    void setPolicy(int maxRetries, long baseDelayMs, long maxDelayMs) {
+        this.maxRetries = Math.max(0, maxRetries);
+        this.baseDelayMs = Math.max(100, baseDelayMs);
+        this.maxDelayMs = Math.max(this.baseDelayMs, maxDelayMs);
+    }
+
+    /**
+     * Schedules retry round {@code retriesSoFar + 1} for the request. Returns
+     * false if the request is out of retries or the failure is permanent.
+     */
+    boolean schedule(final long requestId, int retriesSoFar, int resultCode) {
+        if (retriesSoFar >= maxRetries) {
+            return false;
+        }
+        switch (resultCode) {
+            case SmsManager.RESULT_ERROR_SHORT_CODE_NOT_ALLOWED:
+                // Permanent for this destination; retrying cannot help
+                return false;
+
+            case SmsManager.RESULT_ERROR_NO_SERVICE:
+            case SmsManager.RESULT_ERROR_RADIO_OFF:
+                if (anySimInService()) {
+                    SosTracer.record(SosTracer.RETRY_SCHEDULED, requestId, 0, resultCode);
+                    arm(requestId, 0);
+                } else {
+                    SosTracer.record(SosTracer.RETRY_SCHEDULED, requestId, -1, resultCode);
+                    arm(requestId, MAX_SERVICE_WAIT_MS);
+                    awaitingService.put(requestId, Boolean.TRUE);
+                    watchServiceState();
+                }
+                return true;
+
+            case SmsManager.RESULT_ERROR_LIMIT_EXCEEDED:
+                // The platform's sending quota; only a long pause helps
+                SosTracer.record(SosTracer.RETRY_SCHEDULED, requestId, maxDelayMs, resultCode);
+                arm(requestId, maxDelayMs);
+                return true;
+
+            default:
+                long delayMs = backoffDelayMs(retriesSoFar, baseDelayMs, maxDelayMs,
+                        ThreadLocalRandom.current().nextDouble());
+                SosTracer.record(SosTracer.RETRY_SCHEDULED, requestId, delayMs, resultCode);
+                arm(requestId, delayMs);
+                return true;
+        }
+    }
+
+    /** Drops any pending retry for the request. */
+    void cancel(long requestId) {
+        if (awaitingService.remove(requestId) != null) {
+            unwatchServiceStateIfIdle();
+        }
+        ScheduledFuture<?> future = pending.remove(requestId);
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    int pendingCount() {
+        return pending.size();
+    }
+
+    // Exponential backoff with "equal jitter": half fixed, half scaled by jitter in [0, 1)
+    static long backoffDelayMs(int retriesSoFar, long baseDelayMs, long maxDelayMs, double jitter) {
+        long ceiling = Math.min(maxDelayMs, baseDelayMs << Math.min(retriesSoFar, 20));
+        long half = ceiling / 2;
+        return half + (long) (jitter * (half + 1));
+    }
+
+    private void arm(final long requestId, long delayMs) {
+        ScheduledFuture<?> future = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                fire(requestId);
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+        ScheduledFuture<?> previous = pending.put(requestId, future);
+        if (previous != null) {
+            previous.cancel(false);
+        }
+    }
+
+    private void fire(long requestId) {
+        if (awaitingService.remove(requestId) != null) {
+            unwatchServiceStateIfIdle();
+        }
+        ScheduledFuture<?> future = pending.remove(requestId);
+        if (future != null) {
+            future.cancel(false);
+            callback.onRetryDue(requestId);
+        }
+    }
+
+    private boolean anySimInService() {
+        return inService.containsValue(Boolean.TRUE);
+    }
+
+    private void onServiceStateChanged(int subscriptionId, ServiceState serviceState) {
+        boolean nowInService = serviceState != null && serviceState.getState() == ServiceState.STATE_IN_SERVICE;
+        Boolean before = inService.put(subscriptionId, nowInService);
+        if (nowInService && !Boolean.TRUE.equals(before) && !awaitingService.isEmpty()) {
+            SosTracer.record(SosTracer.SERVICE_RESTORED, subscriptionId, awaitingService.size());
+            for (Long requestId : awaitingService.keySet()) {
+                fire(requestId);
+            }
+        }
+    }
+
+    /** Starts listening to the service state of every active SIM not watched yet. */
+    private void watchServiceState() {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                TelephonyManager telephonyManager = (TelephonyManager) context
+                        .getSystemService(Context.TELEPHONY_SERVICE);
+                // The waiters may already have been released by the time this runs
+                if (telephonyManager == null || awaitingService.isEmpty()) {
+                    return;
+                }
+                if (android.os.Build.VERSION.SDK_INT < android.os.Build.VERSION_CODES.N) {
+                    watch(telephonyManager, DEFAULT_SIM);
+                    return;
+                }
+                for (Integer subscriptionId : SubscriptionRegistry.getInstance(context).snapshot().subscriptionIds) {
+                    if (!serviceWatches.containsKey(subscriptionId)) {
+                        try {
+                            watch(telephonyManager.createForSubscriptionId(subscriptionId), subscriptionId);
+                        } catch (Exception e) {
+                            Log.e(TAG, "Error watching service state for SIM " + subscriptionId + ": "
+                                    + e.getMessage());
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private void watch(TelephonyManager telephonyManager, int subscriptionId) {
+        if (!serviceWatches.containsKey(subscriptionId)) {
+            serviceWatches.put(subscriptionId,
+                    new ServiceWatch(telephonyManager, listen(telephonyManager, subscriptionId)));
+        }
+    }
+
+    /** Drops every service-state registration once no request is waiting for service. */
+    private void unwatchServiceStateIfIdle() {
+        if (!awaitingService.isEmpty()) {
+            return;
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!awaitingService.isEmpty()) {
+                    return;
+                }
+                for (ServiceWatch watch : serviceWatches.values()) {
+                    try {
+                        // Same split as listen(); TelephonyCallback does not exist before API 31
+                        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.S) {
+                            watch.telephonyManager.unregisterTelephonyCallback((TelephonyCallback) watch.listener);
+                        } else {
+                            watch.telephonyManager.listen((PhoneStateListener) watch.listener,
+                                    PhoneStateListener.LISTEN_NONE);
+                        }
+                    } catch (Exception e) {
+                        Log.e(TAG, "Error unwatching service state: " + e.getMessage());
+                    }
+                }
+                serviceWatches.clear();
+                // Without listeners the flags go stale; the next wait re-learns them on registration
+                inService.clear();
+            }
+        });
+    }
+
+    // The current state is delivered right after registering, so an in-service SIM releases waiters at once
+    private Object listen(TelephonyManager telephonyManager, final int subscriptionId) {
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.S) {
+            ServiceStateCallback serviceStateCallback = new ServiceStateCallback(subscriptionId);
+            telephonyManager.registerTelephonyCallback(new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    mainHandler.post(command);
+                }
+            }, serviceStateCallback);
+            return serviceStateCallback;
+        }
+        PhoneStateListener listener = new PhoneStateListener() {
+            @Override
+            public void onServiceStateChanged(ServiceState serviceState) {
+                SmsRetryScheduler.this.onServiceStateChanged(subscriptionId, serviceState);
+            }
+        };
+        telephonyManager.listen(listener, PhoneStateListener.LISTEN_SERVICE_STATE);
+        return listener;
+    }
+
+    private final class ServiceStateCallback extends TelephonyCallback
+            implements TelephonyCallback.ServiceStateListener {
+        private final int subscriptionId;
+
+        ServiceStateCallback(int subscriptionId) {
+            this.subscriptionId = subscriptionId;
+        }
+
+        @Override
+        public void onServiceStateChanged(ServiceState serviceState) {
+            SmsRetryScheduler.this.onServiceStateChanged(subscriptionId, serviceState);
+        }
+    }
+}
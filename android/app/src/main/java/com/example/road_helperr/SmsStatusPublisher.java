@@ -0,0 +1,83 @@
+package com.example.road_helperr;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * Delivers SMS status events to Flutter in batches.
+ *
+ * A multipart or multi-recipient send produces a burst of sent and delivery
+ * statuses. Instead of one platform message per event, events published
+ * within {@link #BATCH_WINDOW_MS} of the first pending one are sent together
+ * as a single {@code onSmsSentStatusBatch} call from one reused main-thread
+ * handler. Each event carries its original method name and a sequence number
+ * that increases in publish order, and the batch keeps that order.
+ */
+final class SmsStatusPublisher {
+    static final String BATCH_METHOD = "onSmsSentStatusBatch";
+    static final String KEY_EVENT = "event";
+    static final String KEY_SEQUENCE = "seq";
+
+    private static final long BATCH_WINDOW_MS = 50;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private List<Map<String, Object>> pending = new ArrayList<>();
+    private long nextSequence = 1;
+    private MethodChannel channel;
+
+    synchronized void setChannel(MethodChannel channel) {
+        this.channel = channel;
+        if (channel == null) {
+            mainHandler.removeCallbacks(flushTask);
+            pending.clear();
+        }
+    }
+
+    /**
+     * Queues a copy of the event stamped with its method name and sequence
+     * number; stored statuses may be published again for coalesced callers.
+     */
+    synchronized void publish(String method, Map<String, Object> event) {
+        if (channel == null) {
+            return;
+        }
+        Map<String, Object> stamped = new HashMap<>(event);
+        stamped.put(KEY_EVENT, method);
+        stamped.put(KEY_SEQUENCE, nextSequence++);
+        pending.add(stamped);
+        if (pending.size() == 1) {
+            mainHandler.postDelayed(flushTask, BATCH_WINDOW_MS);
+        }
+    }
+
+    // Runs on the main thread, as MethodChannel requires
+    private void flush() {
+        List<Map<String, Object>> events;
+        MethodChannel target;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            events = pending;
+            pending = new ArrayList<>();
+            target = channel;
+        }
+        if (target != null) {
+            target.invokeMethod(BATCH_METHOD, events);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.road_helperr;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ServiceInfo;
+import android.os.Build;
+import android.os.IBinder;
+import android.util.Log;
+
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Foreground service that keeps SOS detection alive while the app is in the
+ * background.
+ *
+ * It owns the SOS notification and hosts the screen-state gesture detector,
+ * so a triple press is handled natively even when no activity or Flutter
+ * engine exists. Nothing runs on a timer: the notification is only rebuilt
+ * when its text actually changes, which is when an SOS goes out.
+ */
+public class SosForegroundService extends Service {
+    private static final String TAG = "SosForegroundService";
+    // Distinct from the flutter_background_service channel and id (sos_background_service, 888)
+    private static final String CHANNEL_ID = "sos_native_service";
+    private static final int NOTIFICATION_ID = 889;
+    private static final String TITLE = "SOS Service Active";
+    // Screen broadcasts only show presses that turn the screen off
+    private static final String ARMED_TEXT = "Lock the screen 3 times quickly for emergency";
+
+    /** Told about every triple press the service handles; summary is null if nothing was staged. */
+    interface TriggerListener {
+        void onSosTriggered(Map<String, Object> summary);
+    }
+
+    private static volatile SosForegroundService running;
+    private static volatile TriggerListener triggerListener;
+
+    private final MultiPressDetector detector = new MultiPressDetector();
+    private NotificationManager notificationManager;
+    private String shownText;
+
+    private final BroadcastReceiver screenReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (Intent.ACTION_SCREEN_OFF.equals(intent.getAction())) {
+                onScreenState(false);
+            } else if (Intent.ACTION_SCREEN_ON.equals(intent.getAction())) {
+                onScreenState(true);
+            }
+        }
+    };
+
+    static void start(Context context) {
+        Intent intent = new Intent(context, SosForegroundService.class);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            context.startForegroundService(intent);
+        } else {
+            context.startService(intent);
+        }
+    }
+
+    static void stop(Context context) {
+        context.stopService(new Intent(context, SosForegroundService.class));
+    }
+
+    /**
+     * While running, the service does the screen-broadcast press detection and
+     * PowerButtonReceiver defers to it. The accessibility service may see the
+     * same gesture; SosTriggerGate lets only one of them send.
+     */
+    static boolean isRunning() {
+        return running != null;
+    }
+
+    static void setTriggerListener(TriggerListener listener) {
+        triggerListener = listener;
+    }
+
+    /** Reflects a dispatched SOS in the notification, whichever trigger sent it. */
+    static void onSosDispatched(int recipients, long timestampMs) {
+        SosForegroundService service = running;
+        if (service != null) {
+            service.showText("SOS sent to " + recipients + " contacts at "
+                    + DateFormat.getTimeInstance(DateFormat.SHORT).format(new Date(timestampMs)));
+        }
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID, "SOS Detection",
+                    NotificationManager.IMPORTANCE_LOW);
+            channel.setDescription("SOS emergency background service");
+            channel.enableLights(false);
+            channel.enableVibration(false);
+            channel.setShowBadge(false);
+            notificationManager.createNotificationChannel(channel);
+        }
+
+        shownText = ARMED_TEXT;
+        Notification notification = buildNotification(shownText);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
+            startForeground(NOTIFICATION_ID, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_REMOTE_MESSAGING);
+        } else {
+            startForeground(NOTIFICATION_ID, notification);
+        }
+
+        IntentFilter filter = new IntentFilter(Intent.ACTION_SCREEN_ON);
+        filter.addAction(Intent.ACTION_SCREEN_OFF);
+        registerReceiver(screenReceiver, filter);
+
+        // Have location and battery ready before the first press
+        NativeSosExecutor.getInstance(this);
+        running = this;
+        Log.d(TAG, "SOS foreground service started");
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        return START_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        running = null;
+        unregisterReceiver(screenReceiver);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            stopForeground(STOP_FOREGROUND_REMOVE);
+        } else {
+            stopForeground(true);
+        }
+        Log.d(TAG, "SOS foreground service stopped");
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    private void onScreenState(boolean screenOn) {
+        int result = detector.onScreenState(screenOn);
+        SosTracer.record(SosTracer.SCREEN_STATE, screenOn ? 1 : 0, result, detector.pendingPresses());
+        if (result == MultiPressDetector.RESTARTED) {
+            SosTracer.record(SosTracer.PRESS_RESET);
+        } else if (result == MultiPressDetector.TRIGGERED) {
+            SosTracer.record(SosTracer.TRIPLE_PRESS, detector.presses(), detector.lastTriggerSpanMs());
+            if (!SosTriggerGate.claim()) {
+                return;
+            }
+            Map<String, Object> summary = NativeSosExecutor.getInstance(this).trigger("foreground_service");
+            TriggerListener listener = triggerListener;
+            if (listener != null) {
+                listener.onSosTriggered(summary);
+            }
+        }
+    }
+
+    private synchronized void showText(String text) {
+        if (text.equals(shownText)) {
+            return;
+        }
+        shownText = text;
+        notificationManager.notify(NOTIFICATION_ID, buildNotification(text));
+    }
+
+    private Notification buildNotification(String text) {
+        PendingIntent contentIntent = PendingIntent.getActivity(this, 0,
+                new Intent(this, MainActivity.class), PendingIntent.FLAG_IMMUTABLE);
+        Notification.Builder builder = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                ? new Notification.Builder(this, CHANNEL_ID)
+                : new Notification.Builder(this).setPriority(Notification.PRIORITY_LOW);
+        return builder
+                .setContentTitle(TITLE)
+                .setContentText(text)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentIntent(contentIntent)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setShowWhen(false)
+                .build();
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.road_helperr;
+
+import android.Manifest;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.BatteryManager;
+import android.os.Looper;
+import android.util.Log;
+
+import com.shounakmulay.telephony.utils.SosDataCodec;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps everything an SOS needs at trigger time ready in one immutable snapshot.
+ *
+ * The last good location comes from low-power sources only: the passive
+ * provider (fixes other apps asked for), the network provider and locations
+ * staged from Dart. Battery level comes from the sticky battery intent. Each
+ * change that matters re-renders the SOS body, so composing an alert is a
+ * single volatile read instead of waiting seconds for a GPS fix.
+ */
+final class SosSnapshotProvider {
+    private static final String TAG = "SosSnapshotProvider";
+    private static final String PREFS_NAME = "sos_snapshot";
+    private static final String KEY_LATITUDE = "latitude";
+    private static final String KEY_LONGITUDE = "longitude";
+    private static final String KEY_ACCURACY = "accuracyM";
+    private static final String KEY_FIX_TIME = "fixTimeMs";
+
+    // Passive fixes cost nothing, so take them often; network fixes wake the radio
+    private static final long PASSIVE_INTERVAL_MS = 30 * 1000;
+    private static final long NETWORK_INTERVAL_MS = 5 * 60 * 1000;
+
+    // A fix this much newer replaces an older one even if it is less accurate
+    private static final long SIGNIFICANTLY_NEWER_MS = 2 * 60 * 1000;
+
+    /** What the trigger path reads; never mutated after construction. */
+    static final class Snapshot {
+        final double latitude;
+        final double longitude;
+        final float accuracyM;
+        // Wall-clock time of the fix; 0 if there is none
+        final long fixTimeMs;
+        final int batteryLevel;
+        final String body;
+
+        Snapshot(double latitude, double longitude, float accuracyM, long fixTimeMs, int batteryLevel,
+                String body) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.accuracyM = accuracyM;
+            this.fixTimeMs = fixTimeMs;
+            this.batteryLevel = batteryLevel;
+            this.body = body;
+        }
+
+        boolean hasLocation() {
+            return fixTimeMs != 0;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            if (hasLocation()) {
+                map.put("latitude", latitude);
+                map.put("longitude", longitude);
+                map.put("accuracyM", (double) accuracyM);
+                map.put("fixTimeMs", fixTimeMs);
+                map.put("ageMs", System.currentTimeMillis() - fixTimeMs);
+            }
+            map.put("batteryLevel", batteryLevel);
+            map.put("body", body);
+            return map;
+        }
+    }
+
+    private final Context context;
+    private final SharedPreferences preferences;
+    private final LocationManager locationManager;
+
+    private volatile Snapshot snapshot;
+
+    // Inputs of the snapshot; written under the lock, published through snapshot
+    private String template;
+    private String senderName;
+    private boolean locationUpdatesStarted;
+
+    private final LocationListener locationListener = new LocationListener() {
+        @Override
+        public void onLocationChanged(Location location) {
+            onLocation(location.getLatitude(), location.getLongitude(),
+                    location.hasAccuracy() ? location.getAccuracy() : Float.MAX_VALUE, location.getTime());
+        }
+    };
+
+    private final BroadcastReceiver batteryReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            onBattery(batteryLevel(intent));
+        }
+    };
+
+    SosSnapshotProvider(Context context, String template, String senderName) {
+        this.context = context;
+        this.preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+        this.template = template;
+        this.senderName = senderName;
+
+        Snapshot initial = new Snapshot(0, 0, Float.MAX_VALUE, 0, SosDataCodec.BATTERY_UNKNOWN, "");
+        if (preferences.contains(KEY_FIX_TIME)) {
+            initial = new Snapshot(Double.longBitsToDouble(preferences.getLong(KEY_LATITUDE, 0)),
+                    Double.longBitsToDouble(preferences.getLong(KEY_LONGITUDE, 0)),
+                    preferences.getFloat(KEY_ACCURACY, Float.MAX_VALUE), preferences.getLong(KEY_FIX_TIME, 0),
+                    SosDataCodec.BATTERY_UNKNOWN, "");
+        }
+        snapshot = initial;
+    }
+
+    /** Registers the battery receiver and, once location permission is granted, the location listeners. */
+    void start() {
+        // Sticky, so the current level comes back right away
+        Intent battery = context.registerReceiver(batteryReceiver,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery != null) {
+            onBattery(batteryLevel(battery));
+        } else {
+            rerender();
+        }
+        startLocationUpdates();
+    }
+
+    /** Retried whenever the profile is restaged, since permission may have been granted since. */
+    synchronized void startLocationUpdates() {
+        if (locationUpdatesStarted || locationManager == null || !hasLocationPermission()) {
+            return;
+        }
+        try {
+            seedFromLastKnown(LocationManager.PASSIVE_PROVIDER);
+            seedFromLastKnown(LocationManager.NETWORK_PROVIDER);
+            locationManager.requestLocationUpdates(LocationManager.PASSIVE_PROVIDER, PASSIVE_INTERVAL_MS, 0,
+                    locationListener, Looper.getMainLooper());
+            if (locationManager.isProviderEnabled(LocationManager.NETWORK_PROVIDER)) {
+                locationManager.requestLocationUpdates(LocationManager.NETWORK_PROVIDER, NETWORK_INTERVAL_MS, 0,
+                        locationListener, Looper.getMainLooper());
+            }
+            locationUpdatesStarted = true;
+        } catch (SecurityException | IllegalArgumentException e) {
+            Log.e(TAG, "Cannot listen for location: " + e.getMessage());
+        }
+    }
+
+    Snapshot snapshot() {
+        return snapshot;
+    }
+
+    synchronized void setProfile(String template, String senderName) {
+        this.template = template;
+        this.senderName = senderName;
+        rerender();
+    }
+
+    /** Offers a fix; it only replaces the current one if it is better. */
+    synchronized void onLocation(double latitude, double longitude, float accuracyM, long fixTimeMs) {
+        Snapshot current = snapshot;
+        if (!isBetter(current, accuracyM, fixTimeMs)) {
+            return;
+        }
+        snapshot = new Snapshot(latitude, longitude, accuracyM, fixTimeMs, current.batteryLevel,
+                render(latitude, longitude, true, current.batteryLevel));
+        preferences.edit()
+                .putLong(KEY_LATITUDE, Double.doubleToRawLongBits(latitude))
+                .putLong(KEY_LONGITUDE, Double.doubleToRawLongBits(longitude))
+                .putFloat(KEY_ACCURACY, accuracyM)
+                .putLong(KEY_FIX_TIME, fixTimeMs)
+                .apply();
+    }
+
+    private synchronized void onBattery(int batteryLevel) {
+        Snapshot current = snapshot;
+        // The battery intent fires on every voltage and temperature change too
+        if (batteryLevel == current.batteryLevel && !current.body.isEmpty()) {
+            return;
+        }
+        snapshot = new Snapshot(current.latitude, current.longitude, current.accuracyM, current.fixTimeMs,
+                batteryLevel, render(current.latitude, current.longitude, current.hasLocation(), batteryLevel));
+    }
+
+    private synchronized void rerender() {
+        Snapshot current = snapshot;
+        snapshot = new Snapshot(current.latitude, current.longitude, current.accuracyM, current.fixTimeMs,
+                current.batteryLevel,
+                render(current.latitude, current.longitude, current.hasLocation(), current.batteryLevel));
+    }
+
+    private String render(double latitude, double longitude, boolean hasLocation, int batteryLevel) {
+        return NativeSosExecutor.render(template, senderName, hasLocation ? latitude : Double.NaN,
+                hasLocation ? longitude : Double.NaN, batteryLevel);
+    }
+
+    private void seedFromLastKnown(String provider) {
+        Location location = locationManager.getLastKnownLocation(provider);
+        if (location != null) {
+            locationListener.onLocationChanged(location);
+        }
+    }
+
+    private boolean hasLocationPermission() {
+        return context.checkSelfPermission(Manifest.permission.ACCESS_FINE_LOCATION)
+                == PackageManager.PERMISSION_GRANTED
+                || context.checkSelfPermission(Manifest.permission.ACCESS_COARSE_LOCATION)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+
+    // Newer wins unless it is barely newer and clearly less accurate
+    static boolean isBetter(Snapshot current, float accuracyM, long fixTimeMs) {
+        if (!current.hasLocation()) {
+            return true;
+        }
+        long delta = fixTimeMs - current.fixTimeMs;
+        if (delta > SIGNIFICANTLY_NEWER_MS) {
+            return true;
+        }
+        if (delta < -SIGNIFICANTLY_NEWER_MS) {
+            return false;
+        }
+        if (accuracyM < current.accuracyM) {
+            return true;
+        }
+        return delta > 0 && accuracyM <= current.accuracyM * 2;
+    }
+
+    private static int batteryLevel(Intent intent) {
+        int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        if (level < 0 || scale <= 0) {
+            return SosDataCodec.BATTERY_UNKNOWN;
+        }
+        return Math.round(level * 100f / scale);
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.road_helperr;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-memory event trace of the native SOS path.
+ *
+ * Records are fixed-width slots in one preallocated ring: a sequence number,
+ * an event id, an elapsed-realtime timestamp and up to three long arguments.
+ * Writers claim a slot with a single atomic increment and never lock or
+ * allocate, so tracing can stay on in release builds where the old
+ * concatenated logcat lines were too expensive. The ring is read through
+ * dumpTrace or exported to a file after an incident.
+ */
+final class SosTracer {
+    // Event ids; arguments are listed next to each
+    static final int REQUEST_QUEUED = 1;        // requestId, mode ordinal, SIM count
+    static final int BATCH_DISPATCHED = 2;      // batchId, recipients, SIM count
+    static final int REQUEST_COALESCED = 3;     // new requestId, coalesced into requestId
+    static final int ATTEMPT_SENT = 4;          // requestId, messageId, subscriptionId (-1 = default manager)
+    static final int DEFAULT_MANAGER = 5;       // requestId
+    static final int RATE_LIMITED = 6;          // requestId, subscriptionId, wait ms
+    static final int RETRY_ROUND = 7;           // requestId, round
+    static final int NEXT_SIM_SCHEDULED = 8;    // requestId, delay ms
+    static final int MESSAGE_PLANNED = 9;       // messageId, messages, total parts
+    static final int SENT_OK = 10;              // requestId, messageId, subscriptionId
+    static final int SENT_FAILED = 11;          // requestId, messageId, result code
+    static final int DELIVERED = 12;            // requestId, messageId, 1 if delivered
+    static final int SIM_QUERY = 13;            // active subscriptions, phone count
+    static final int SCREEN_STATE = 14;         // 1 if on, MultiPressDetector result, presses in window
+    static final int PRESS_RESET = 15;          // (earlier presses expired)
+    static final int TRIPLE_PRESS = 16;         // press count, ms from first to last press
+    static final int NATIVE_SOS = 17;           // recipients, location age ms (-1 = none), battery
+    static final int KEY_PRESS = 18;            // key code, MultiPressDetector result, presses in window
+    static final int RETRY_SCHEDULED = 19;      // requestId, delay ms (-1 = until service returns), result code
+    static final int SERVICE_RESTORED = 20;     // subscriptionId, retries released
+    static final int TRIGGER_SUPPRESSED = 21;   // ms since the trigger that claimed the gesture
+    static final int DATA_FALLBACK = 22;        // requestId, subscriptionId of the failed data attempt
+
+    private static final String[] EVENT_NAMES = {
+            "none", "requestQueued", "batchDispatched", "requestCoalesced", "attemptSent",
+            "defaultManager", "rateLimited", "retryRound", "nextSimScheduled", "messagePlanned",
+            "sentOk", "sentFailed", "delivered", "simQuery", "screenState", "pressReset",
+            "triplePress", "nativeSos", "keyPress", "retryScheduled", "serviceRestored",
+            "triggerSuppressed", "dataFallback"
+    };
+
+    // Must stay a power of two
+    private static final int CAPACITY = 4096;
+    private static final int MASK = CAPACITY - 1;
+    // Slot layout: sequence, event, time, arg0, arg1, arg2
+    private static final int WIDTH = 6;
+    private static final String EXPORT_DIR = "sos_traces";
+
+    private static final AtomicLongArray slots = new AtomicLongArray(CAPACITY * WIDTH);
+    private static final AtomicLong cursor = new AtomicLong();
+
+    private SosTracer() {
+    }
+
+    static void record(int event) {
+        record(event, 0, 0, 0);
+    }
+
+    static void record(int event, long arg0) {
+        record(event, arg0, 0, 0);
+    }
+
+    static void record(int event, long arg0, long arg1) {
+        record(event, arg0, arg1, 0);
+    }
+
+    static void record(int event, long arg0, long arg1, long arg2) {
+        long sequence = cursor.incrementAndGet();
+        int base = (int) (sequence & MASK) * WIDTH;
+        // A zero sequence marks the slot as being written, so readers skip it
+        slots.set(base, 0);
+        slots.lazySet(base + 1, event);
+        slots.lazySet(base + 2, SystemClock.elapsedRealtimeNanos());
+        slots.lazySet(base + 3, arg0);
+        slots.lazySet(base + 4, arg1);
+        slots.lazySet(base + 5, arg2);
+        slots.set(base, sequence);
+    }
+
+    /** Oldest-first copy of the ring, plus the wall-clock time of boot for converting timestamps. */
+    static Map<String, Object> dump() {
+        long last = cursor.get();
+        List<Map<String, Object>> records = new ArrayList<>();
+        for (long sequence = Math.max(1, last - CAPACITY + 1); sequence <= last; sequence++) {
+            long[] slot = readSlot(sequence);
+            if (slot == null) {
+                continue;
+            }
+            Map<String, Object> record = new HashMap<>();
+            record.put("seq", sequence);
+            record.put("event", eventName((int) slot[0]));
+            record.put("timeNs", slot[1]);
+            List<Long> args = new ArrayList<>(3);
+            args.add(slot[2]);
+            args.add(slot[3]);
+            args.add(slot[4]);
+            record.put("args", args);
+            records.add(record);
+        }
+
+        Map<String, Object> trace = new HashMap<>();
+        trace.put("bootTimeMs", System.currentTimeMillis() - SystemClock.elapsedRealtime());
+        trace.put("recorded", last);
+        trace.put("records", records);
+        return trace;
+    }
+
+    /** Writes the ring as tab-separated text under the app's files dir and returns the file path. */
+    static String export(Context context) throws IOException {
+        File dir = new File(context.getFilesDir(), EXPORT_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        long now = System.currentTimeMillis();
+        File file = new File(dir, "sos_trace_" + now + ".tsv");
+        long last = cursor.get();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            writer.write("# bootTimeMs=" + (now - SystemClock.elapsedRealtime()) + " recorded=" + last);
+            writer.newLine();
+            writer.write("seq\ttimeNs\tevent\targ0\targ1\targ2");
+            writer.newLine();
+            for (long sequence = Math.max(1, last - CAPACITY + 1); sequence <= last; sequence++) {
+                long[] slot = readSlot(sequence);
+                if (slot == null) {
+                    continue;
+                }
+                writer.write(sequence + "\t" + slot[1] + "\t" + eventName((int) slot[0]) + "\t" + slot[2]
+                        + "\t" + slot[3] + "\t" + slot[4]);
+                writer.newLine();
+            }
+        }
+        return file.getAbsolutePath();
+    }
+
+    // Event, time and arguments of a slot, or null if it was overwritten or is mid-write
+    private static long[] readSlot(long sequence) {
+        int base = (int) (sequence & MASK) * WIDTH;
+        if (slots.get(base) != sequence) {
+            return null;
+        }
+        long[] slot = new long[WIDTH - 1];
+        for (int i = 0; i < slot.length; i++) {
+            slot[i] = slots.get(base + 1 + i);
+        }
+        return slots.get(base) == sequence ? slot : null;
+    }
+
+    private static String eventName(int event) {
+        return event >= 0 && event < EVENT_NAMES.length ? EVENT_NAMES[event] : String.valueOf(event);
+    }
+}
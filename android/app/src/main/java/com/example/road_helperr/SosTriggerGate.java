@@ -0,0 +1,32 @@
+package com.example.road_helperr;
+
+import android.os.SystemClock;
+
+/**
+ * Lets one physical gesture send one SOS, whichever detectors saw it.
+ *
+ * The same power presses can reach the key-event detector, the screen
+ * broadcast detector and the foreground service at once, and a volume
+ * gesture can overlap a power one. Every trigger path claims the gate
+ * first; claims within one detection window of an accepted one are refused.
+ */
+final class SosTriggerGate {
+    private static long lastClaimMs = Long.MIN_VALUE;
+
+    private SosTriggerGate() {
+    }
+
+    /** True if the caller should send the SOS; false if another path just did. */
+    static boolean claim() {
+        return claim(SystemClock.elapsedRealtime());
+    }
+
+    static synchronized boolean claim(long nowMs) {
+        if (lastClaimMs != Long.MIN_VALUE && nowMs - lastClaimMs < MultiPressDetector.DEFAULT_WINDOW_MS) {
+            SosTracer.record(SosTracer.TRIGGER_SUPPRESSED, nowMs - lastClaimMs);
+            return false;
+        }
+        lastClaimMs = nowMs;
+        return true;
+    }
+}
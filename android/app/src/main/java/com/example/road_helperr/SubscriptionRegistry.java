@@ -0,0 +1,262 @@
+package com.example.road_helperr;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.telephony.SubscriptionInfo;
+import android.telephony.SubscriptionManager;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process-wide cache of the active SIM subscriptions.
+ *
+ * getActiveSubscriptionInfoList() is an IPC into the phone process, so it is
+ * made once and then only again after the system reports a subscription
+ * change. Readers get an immutable, versioned {@link Snapshot} without any
+ * binder call.
+ */
+final class SubscriptionRegistry {
+    private static final String TAG = "SubscriptionRegistry";
+
+    /** One active SIM as seen when the snapshot was taken. */
+    static final class SimCard {
+        final int subscriptionId;
+        final int simSlotIndex;
+        final String carrierName;
+        final String displayName;
+        final String number;
+        final String countryIso;
+
+        SimCard(SubscriptionInfo info) {
+            subscriptionId = info.getSubscriptionId();
+            simSlotIndex = info.getSimSlotIndex();
+            carrierName = info.getCarrierName() != null ? info.getCarrierName().toString() : "Unknown";
+            displayName = info.getDisplayName() != null ? info.getDisplayName().toString()
+                    : "SIM " + (info.getSimSlotIndex() + 1);
+            number = info.getNumber() != null ? info.getNumber() : "Unknown";
+            countryIso = info.getCountryIso() != null ? info.getCountryIso() : "Unknown";
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> simInfo = new HashMap<>();
+            simInfo.put("subscriptionId", subscriptionId);
+            simInfo.put("simSlotIndex", simSlotIndex);
+            simInfo.put("carrierName", carrierName);
+            simInfo.put("displayName", displayName);
+            simInfo.put("phoneNumber", number);
+            simInfo.put("countryIso", countryIso);
+            return simInfo;
+        }
+
+        boolean sameAs(SimCard other) {
+            return subscriptionId == other.subscriptionId
+                    && simSlotIndex == other.simSlotIndex
+                    && carrierName.equals(other.carrierName)
+                    && displayName.equals(other.displayName)
+                    && number.equals(other.number)
+                    && countryIso.equals(other.countryIso);
+        }
+    }
+
+    /** Immutable view of the active subscriptions; the version grows on every real change. */
+    static final class Snapshot {
+        final long version;
+        final List<SimCard> sims;
+        final List<Integer> subscriptionIds;
+        // Modem count, for devices where the subscription list is unavailable
+        final int phoneCount;
+
+        Snapshot(long version, List<SimCard> sims, int phoneCount) {
+            this.version = version;
+            this.sims = Collections.unmodifiableList(sims);
+            List<Integer> ids = new ArrayList<>(sims.size());
+            for (SimCard sim : sims) {
+                ids.add(sim.subscriptionId);
+            }
+            this.subscriptionIds = Collections.unmodifiableList(ids);
+            this.phoneCount = phoneCount;
+        }
+
+        SimCard find(int subscriptionId) {
+            for (SimCard sim : sims) {
+                if (sim.subscriptionId == subscriptionId) {
+                    return sim;
+                }
+            }
+            return null;
+        }
+
+        boolean sameSims(List<SimCard> other) {
+            if (other.size() != sims.size()) {
+                return false;
+            }
+            for (int i = 0; i < sims.size(); i++) {
+                if (!sims.get(i).sameAs(other.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        Map<String, Object> toMap() {
+            List<Map<String, Object>> simList = new ArrayList<>(sims.size());
+            for (SimCard sim : sims) {
+                simList.add(sim.toMap());
+            }
+            Map<String, Object> map = new HashMap<>();
+            map.put("version", version);
+            map.put("sims", simList);
+            map.put("phoneCount", phoneCount);
+            return map;
+        }
+    }
+
+    /** Notified on the main thread after the snapshot has changed. */
+    interface ChangeListener {
+        void onSubscriptionsChanged(Snapshot snapshot);
+    }
+
+    private static volatile SubscriptionRegistry instance;
+
+    private final Context context;
+    private final CopyOnWriteArrayList<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile Snapshot snapshot;
+    // Set until a refresh succeeds and again by every change callback
+    private volatile boolean stale = true;
+
+    static SubscriptionRegistry getInstance(Context context) {
+        SubscriptionRegistry result = instance;
+        if (result == null) {
+            synchronized (SubscriptionRegistry.class) {
+                result = instance;
+                if (result == null) {
+                    result = new SubscriptionRegistry(context.getApplicationContext());
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private SubscriptionRegistry(Context context) {
+        this.context = context;
+        this.snapshot = new Snapshot(0, new ArrayList<SimCard>(), readPhoneCount());
+        // The listener needs a Looper thread; the callback also fires once right after registration
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                registerChangeListener();
+            }
+        });
+    }
+
+    private void registerChangeListener() {
+        if (android.os.Build.VERSION.SDK_INT < android.os.Build.VERSION_CODES.LOLLIPOP_MR1) {
+            return;
+        }
+        try {
+            SubscriptionManager subscriptionManager = (SubscriptionManager) context
+                    .getSystemService(Context.TELEPHONY_SUBSCRIPTION_SERVICE);
+            if (subscriptionManager != null) {
+                subscriptionManager.addOnSubscriptionsChangedListener(
+                        new SubscriptionManager.OnSubscriptionsChangedListener() {
+                            @Override
+                            public void onSubscriptionsChanged() {
+                                stale = true;
+                                refresh();
+                            }
+                        });
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error registering subscription listener: " + e.getMessage());
+        }
+    }
+
+    void addListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Current subscriptions; only queries the system if a change was reported since the last read. */
+    Snapshot snapshot() {
+        return stale ? refresh() : snapshot;
+    }
+
+    private Snapshot refresh() {
+        final Snapshot changed;
+        synchronized (this) {
+            if (!stale) {
+                return snapshot;
+            }
+            List<SimCard> sims = readSims();
+            if (sims == null) {
+                // Leave it stale so the next read tries again (e.g. after the permission is granted)
+                return snapshot;
+            }
+            stale = false;
+            if (snapshot.sameSims(sims)) {
+                return snapshot;
+            }
+            snapshot = new Snapshot(snapshot.version + 1, sims, snapshot.phoneCount);
+            changed = snapshot;
+        }
+        Log.d(TAG, "Subscriptions changed (version " + changed.version + "): " + changed.subscriptionIds);
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                for (ChangeListener listener : listeners) {
+                    listener.onSubscriptionsChanged(changed);
+                }
+            }
+        });
+        return changed;
+    }
+
+    private List<SimCard> readSims() {
+        if (android.os.Build.VERSION.SDK_INT < android.os.Build.VERSION_CODES.LOLLIPOP_MR1) {
+            return new ArrayList<>();
+        }
+        try {
+            SubscriptionManager subscriptionManager = (SubscriptionManager) context
+                    .getSystemService(Context.TELEPHONY_SUBSCRIPTION_SERVICE);
+            if (subscriptionManager == null) {
+                return new ArrayList<>();
+            }
+            List<SimCard> sims = new ArrayList<>();
+            List<SubscriptionInfo> subscriptionInfos = subscriptionManager.getActiveSubscriptionInfoList();
+            if (subscriptionInfos != null) {
+                for (SubscriptionInfo info : subscriptionInfos) {
+                    sims.add(new SimCard(info));
+                }
+            }
+            return sims;
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading active subscriptions: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private int readPhoneCount() {
+        try {
+            TelephonyManager telephonyManager = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+            if (telephonyManager != null
+                    && android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
+                return telephonyManager.getPhoneCount();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error getting phone count: " + e.getMessage());
+        }
+        return 0;
+    }
+}
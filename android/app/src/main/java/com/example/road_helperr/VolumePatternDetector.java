@@ -0,0 +1,62 @@
+package com.example.road_helperr;
+
+import android.view.KeyEvent;
+
+/**
+ * Detects the volume-key SOS gesture: up and down pressed alternately, six
+ * presses in all, within the detection window.
+ *
+ * Changing the volume presses one key several times in a row, which never
+ * completes the pattern: a repeat of the same key starts the sequence over
+ * from that press. Timing (window, spacing) is the wrapped
+ * {@link MultiPressDetector}'s.
+ *
+ * Not thread-safe; feed each instance from one thread.
+ */
+final class VolumePatternDetector {
+    static final int DEFAULT_PRESSES = 6;
+
+    private final MultiPressDetector detector;
+    private int lastKeyCode = KeyEvent.KEYCODE_UNKNOWN;
+
+    VolumePatternDetector() {
+        this(new MultiPressDetector(DEFAULT_PRESSES, MultiPressDetector.DEFAULT_WINDOW_MS,
+                MultiPressDetector.DEFAULT_MIN_SPACING_MS, MultiPressDetector.DEFAULT_DEBOUNCE_MS,
+                MultiPressDetector.SYSTEM_CLOCK));
+    }
+
+    VolumePatternDetector(MultiPressDetector detector) {
+        this.detector = detector;
+    }
+
+    /** A volume up or down press; returns a {@link MultiPressDetector} result. */
+    int onKey(int keyCode) {
+        if (keyCode == lastKeyCode) {
+            detector.reset();
+        }
+        int result = detector.onPress();
+        if (result == MultiPressDetector.TRIGGERED) {
+            lastKeyCode = KeyEvent.KEYCODE_UNKNOWN;
+        } else if (result != MultiPressDetector.TOO_SOON) {
+            lastKeyCode = keyCode;
+        }
+        return result;
+    }
+
+    int pendingPresses() {
+        return detector.pendingPresses();
+    }
+
+    int presses() {
+        return detector.presses();
+    }
+
+    long lastTriggerSpanMs() {
+        return detector.lastTriggerSpanMs();
+    }
+
+    void reset() {
+        detector.reset();
+        lastKeyCode = KeyEvent.KEYCODE_UNKNOWN;
+    }
+}
@@ -47,6 +47,28 @@ class MainActivity: FlutterActivity() {
         // Register power button receiver for SOS
         powerButtonReceiver = PowerButtonReceiver(this, methodChannel!!)
         powerButtonReceiver?.register()
+        methodChannel!!.setMethodCallHandler { call, result ->
+            if (call.method == "setSosServiceEnabled") {
+                if (call.argument<Boolean>("enabled") == true) {
+                    SosForegroundService.start(this)
+                } else {
+                    SosForegroundService.stop(this)
+                }
+                result.success(true)
+            } else if (call.method == "setScreenEventMode") {
+                try {
+                    powerButtonReceiver?.setScreenEventMode(
+                        call.argument<String>("mode") ?: PowerButtonReceiver.SCREEN_EVENTS_NONE,
+                        call.argument<Number>("summaryIntervalMs")?.toLong()
+                    )
+                    result.success(true)
+                } catch (e: IllegalArgumentException) {
+                    result.error("INVALID_ARGUMENTS", e.message, null)
+                }
+            } else {
+                result.notImplemented()
+            }
+        }
 
         // Accessibility Service Channel
         MethodChannel(flutterEngine.dartExecutor.binaryMessenger, ACCESSIBILITY_CHANNEL).setMethodCallHandler { call, result ->
@@ -59,6 +81,10 @@ class MainActivity: FlutterActivity() {
                     openAccessibilitySettings()
                     result.success("Accessibility settings opened")
                 }
+                "setSosArmed" -> {
+                    SOSAccessibilityService.setArmed(this, call.argument<Boolean>("armed") ?: true)
+                    result.success(true)
+                }
                 else -> {
                     result.notImplemented()
                 }
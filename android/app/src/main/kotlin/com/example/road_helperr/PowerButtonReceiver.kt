@@ -6,6 +6,7 @@ import android.content.Intent
 import android.content.IntentFilter
 import android.os.Handler
 import android.os.Looper
+import android.os.SystemClock
 import android.util.Log
 import io.flutter.plugin.common.MethodChannel
 
@@ -16,14 +17,46 @@ class PowerButtonReceiver(
 
     companion object {
         private const val TAG = "PowerButtonReceiver"
-        private const val RESET_TIMEOUT = 5000L // 5 seconds - more time for emergency situations
-        private const val QUICK_PRESS_TIMEOUT = 1000L // 1 second between presses for quick sequence
+
+        // What Flutter hears about plain screen on/off; triggers are always sent
+        const val SCREEN_EVENTS_NONE = "none"
+        const val SCREEN_EVENTS_SUMMARY = "summary"
+        const val SCREEN_EVENTS_ALL = "all"
+        private const val DEFAULT_SUMMARY_INTERVAL_MS = 15 * 60 * 1000L
     }
 
-    private var pressCount = 0
+    // Broadcasts arrive on the main thread, which is all the detector needs
+    private val detector = MultiPressDetector()
     private val handler = Handler(Looper.getMainLooper())
-    private var resetRunnable: Runnable? = null
-    private var lastPressTime = 0L
+
+    // Flutter only wants triggers until it asks for more
+    private var screenEventMode = SCREEN_EVENTS_NONE
+    private var summaryIntervalMs = DEFAULT_SUMMARY_INTERVAL_MS
+    private var summaryStartMs = 0L
+    private var screenOnCount = 0
+    private var screenOffCount = 0
+    private var debouncedCount = 0
+    private var lastScreenOn = true
+    private var summaryScheduled = false
+    private val summaryRunnable = Runnable { flushSummary() }
+
+    /**
+     * Sets which screen events reach Flutter: none, a periodic summary, or
+     * every event. A summary is only scheduled once there is something to
+     * report, so an idle phone never wakes the isolate.
+     */
+    fun setScreenEventMode(mode: String, intervalMs: Long?) {
+        if (mode != SCREEN_EVENTS_NONE && mode != SCREEN_EVENTS_SUMMARY && mode != SCREEN_EVENTS_ALL) {
+            throw IllegalArgumentException("Unknown screen event mode: $mode")
+        }
+        if (screenEventMode == SCREEN_EVENTS_SUMMARY && mode != SCREEN_EVENTS_SUMMARY) {
+            flushSummary()
+        }
+        screenEventMode = mode
+        if (intervalMs != null && intervalMs > 0) {
+            summaryIntervalMs = intervalMs
+        }
+    }
 
     fun register() {
         try {
@@ -32,6 +65,8 @@ class PowerButtonReceiver(
                 addAction(Intent.ACTION_SCREEN_OFF)
             }
             context.registerReceiver(this, filter)
+            // Presses the foreground service handles still have to reach Flutter
+            SosForegroundService.setTriggerListener { summary -> notifyTriggered(summary) }
             Log.d(TAG, "PowerButtonReceiver registered")
         } catch (e: Exception) {
             Log.e(TAG, "Error registering PowerButtonReceiver: ${e.message}")
@@ -41,7 +76,10 @@ class PowerButtonReceiver(
     fun unregister() {
         try {
             context.unregisterReceiver(this)
-            resetRunnable?.let { handler.removeCallbacks(it) }
+            SosForegroundService.setTriggerListener(null)
+            detector.reset()
+            handler.removeCallbacks(summaryRunnable)
+            summaryScheduled = false
             Log.d(TAG, "PowerButtonReceiver unregistered")
         } catch (e: Exception) {
             Log.e(TAG, "Error unregistering PowerButtonReceiver: ${e.message}")
@@ -60,58 +98,82 @@ class PowerButtonReceiver(
     }
 
     private fun handleScreenStateChange(isScreenOn: Boolean) {
-        val currentTime = System.currentTimeMillis()
-        Log.d(TAG, "Screen state changed: $isScreenOn")
-
-        // Check if this press is within reasonable time from last press
-        val timeSinceLastPress = currentTime - lastPressTime
-
-        if (timeSinceLastPress > RESET_TIMEOUT) {
-            // Too much time passed, reset count
-            pressCount = 0
-            Log.d(TAG, "Press count reset due to timeout (${timeSinceLastPress}ms)")
-        }
-
-        // Only count if it's a screen OFF event (actual power button press)
-        if (!isScreenOn) {
-            pressCount++
-            lastPressTime = currentTime
-
-            Log.d(TAG, "Power button press count: $pressCount (time since last: ${timeSinceLastPress}ms)")
-
-            // Cancel previous reset timer
-            resetRunnable?.let { handler.removeCallbacks(it) }
-
-            // Set new reset timer - longer timeout for emergency situations
-            resetRunnable = Runnable {
-                Log.d(TAG, "Press count reset after timeout")
-                pressCount = 0
+        val result = detector.onScreenState(isScreenOn)
+        // The foreground service counts presses while it runs and reports through the listener
+        if (!SosForegroundService.isRunning()) {
+            SosTracer.record(SosTracer.SCREEN_STATE, if (isScreenOn) 1L else 0L, result.toLong(),
+                detector.pendingPresses().toLong())
+
+            if (result == MultiPressDetector.RESTARTED) {
+                SosTracer.record(SosTracer.PRESS_RESET)
+            } else if (result == MultiPressDetector.TRIGGERED) {
+                SosTracer.record(SosTracer.TRIPLE_PRESS, detector.presses().toLong(), detector.lastTriggerSpanMs())
+
+                // Send natively first; Flutter only has to build the SOS itself if nothing is staged
+                if (SosTriggerGate.claim()) {
+                    notifyTriggered(NativeSosExecutor.getInstance(context).trigger("power_button"))
+                }
+                return // Don't send regular screen state change for emergency
             }
-            handler.postDelayed(resetRunnable!!, RESET_TIMEOUT)
-
-            // Check for triple press
-            if (pressCount >= 3) {
-                Log.d(TAG, "🚨 EMERGENCY: Triple power button press detected!")
-                pressCount = 0
-                resetRunnable?.let { handler.removeCallbacks(it) }
+        }
 
-                // Notify Flutter with specific triple press method
+        when (screenEventMode) {
+            SCREEN_EVENTS_ALL -> {
                 try {
-                    Log.d(TAG, "🚨 Sending EMERGENCY signal to Flutter...")
-                    methodChannel.invokeMethod("onTriplePowerPress", true)
-                    Log.d(TAG, "✅ Emergency signal sent successfully")
+                    methodChannel.invokeMethod("onScreenStateChanged", isScreenOn)
                 } catch (e: Exception) {
-                    Log.e(TAG, "❌ Error sending emergency signal: ${e.message}")
+                    Log.e(TAG, "Error invoking Flutter screen state method: ${e.message}")
                 }
-                return // Don't send regular screen state change for emergency
             }
+            SCREEN_EVENTS_SUMMARY -> {
+                if (isScreenOn) screenOnCount++ else screenOffCount++
+                // Screen-on transitions never count, so only dropped offs are debounced presses
+                if (!isScreenOn &&
+                    (result == MultiPressDetector.DEBOUNCED || result == MultiPressDetector.TOO_SOON)) {
+                    debouncedCount++
+                }
+                lastScreenOn = isScreenOn
+                if (!summaryScheduled) {
+                    summaryStartMs = SystemClock.elapsedRealtime()
+                    summaryScheduled = true
+                    handler.postDelayed(summaryRunnable, summaryIntervalMs)
+                }
+            }
+        }
+    }
+
+    private fun notifyTriggered(summary: Map<String, Any>?) {
+        try {
+            if (summary != null) {
+                methodChannel.invokeMethod("onNativeSosDispatched", summary)
+            } else {
+                methodChannel.invokeMethod("onTriplePowerPress", true)
+            }
+        } catch (e: Exception) {
+            Log.e(TAG, "❌ Error sending emergency signal: ${e.message}")
         }
+    }
 
-        // Send regular screen state change for counting (only if not emergency)
+    private fun flushSummary() {
+        handler.removeCallbacks(summaryRunnable)
+        if (!summaryScheduled) {
+            return
+        }
+        summaryScheduled = false
+        val summary = mapOf(
+            "screenOn" to screenOnCount,
+            "screenOff" to screenOffCount,
+            "debounced" to debouncedCount,
+            "isScreenOn" to lastScreenOn,
+            "periodMs" to SystemClock.elapsedRealtime() - summaryStartMs
+        )
+        screenOnCount = 0
+        screenOffCount = 0
+        debouncedCount = 0
         try {
-            methodChannel.invokeMethod("onScreenStateChanged", isScreenOn)
+            methodChannel.invokeMethod("onScreenStateSummary", summary)
         } catch (e: Exception) {
-            Log.e(TAG, "Error invoking Flutter screen state method: ${e.message}")
+            Log.e(TAG, "Error invoking Flutter screen state summary: ${e.message}")
         }
     }
 }
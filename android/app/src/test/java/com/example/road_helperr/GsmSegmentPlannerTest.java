@@ -0,0 +1,118 @@
+package com.example.road_helperr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class GsmSegmentPlannerTest {
+
+    private static final String ARABIC_SOS = "\nSOS! محمد أحمد needs help!\n"
+            + "Current coordinates: 30.0444187, 31.2357116\n"
+            + "Battery: 85%\n"
+            + "IMPORTANT: Copy the coordinates and put them in Google Maps to show the actual location.\n";
+
+    private static String repeat(String text, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(text);
+        }
+        return builder.toString();
+    }
+
+    @Test
+    public void gsmLimits() {
+        assertEquals(1, GsmSegmentPlanner.segment(repeat("a", 160)).parts);
+        assertEquals(2, GsmSegmentPlanner.segment(repeat("a", 161)).parts);
+        assertEquals(2, GsmSegmentPlanner.segment(repeat("a", 306)).parts);
+        assertEquals(3, GsmSegmentPlanner.segment(repeat("a", 307)).parts);
+        assertEquals(GsmSegmentPlanner.Encoding.GSM_7, GsmSegmentPlanner.segment("@£$ÄÖÑÜ").encoding);
+    }
+
+    @Test
+    public void extensionCharactersCostTwoSeptets() {
+        GsmSegmentPlanner.Segmentation braces = GsmSegmentPlanner.segment(repeat("{", 80));
+        assertEquals(160, braces.units);
+        assertEquals(1, braces.parts);
+        assertEquals(2, GsmSegmentPlanner.segment("a" + repeat("€", 80)).parts);
+    }
+
+    @Test
+    public void escapeSequenceIsNeverSplit() {
+        // 306 septets would fit two parts, but the euro sign cannot straddle the boundary
+        String text = repeat("a", 152) + "€" + repeat("a", 152);
+        GsmSegmentPlanner.Segmentation segmentation = GsmSegmentPlanner.segment(text);
+        assertEquals(306, segmentation.units);
+        assertEquals(3, segmentation.parts);
+    }
+
+    @Test
+    public void ucs2Limits() {
+        assertEquals(1, GsmSegmentPlanner.segment(repeat("ع", 70)).parts);
+        assertEquals(2, GsmSegmentPlanner.segment(repeat("ع", 71)).parts);
+        assertEquals(2, GsmSegmentPlanner.segment(repeat("ع", 134)).parts);
+        assertEquals(3, GsmSegmentPlanner.segment(repeat("ع", 135)).parts);
+        assertEquals(GsmSegmentPlanner.Encoding.UCS_2, GsmSegmentPlanner.segment("Help ع").encoding);
+    }
+
+    @Test
+    public void surrogatePairIsNeverSplit() {
+        String text = repeat("ع", 66) + "😀" + repeat("ع", 66);
+        GsmSegmentPlanner.Segmentation segmentation = GsmSegmentPlanner.segment(text);
+        assertEquals(134, segmentation.units);
+        assertEquals(3, segmentation.parts);
+    }
+
+    @Test
+    public void transliteratesPunctuationAccentsAndArabic() {
+        assertEquals("\"Help\" - now...", GsmSegmentPlanner.transliterate("“Help” – now…"));
+        assertEquals("facade", GsmSegmentPlanner.transliterate("façade"));
+        assertEquals("30.5", GsmSegmentPlanner.transliterate("٣٠٫٥"));
+        assertEquals("mhmd", GsmSegmentPlanner.transliterate("محمد"));
+        // GSM letters keep their accents, unknown characters are left alone
+        assertEquals("é😀", GsmSegmentPlanner.transliterate("é😀"));
+    }
+
+    @Test
+    public void compactDropsBlankLinesAndPadding() {
+        assertEquals("SOS! help\nBattery: 5%", GsmSegmentPlanner.compact("\n  SOS!   help \n\nBattery: 5%\n"));
+    }
+
+    @Test
+    public void gsmMessageIsSentAsIs() {
+        GsmSegmentPlanner.Layout layout = GsmSegmentPlanner.plan("\nSOS! Mohamed needs help!\n", true, true);
+        assertEquals(GsmSegmentPlanner.Layout.AS_IS, layout.kind);
+        assertEquals("SOS! Mohamed needs help!", layout.messages.get(0));
+        assertEquals(1, layout.totalParts);
+    }
+
+    @Test
+    public void splitKeepsCoordinatesInGsm() {
+        GsmSegmentPlanner.Layout asIs = GsmSegmentPlanner.plan(ARABIC_SOS, false, false);
+        assertEquals(GsmSegmentPlanner.Layout.AS_IS, asIs.kind);
+        assertEquals(3, asIs.totalParts);
+
+        GsmSegmentPlanner.Layout split = GsmSegmentPlanner.plan(ARABIC_SOS, true, false);
+        assertEquals(GsmSegmentPlanner.Layout.SPLIT, split.kind);
+        assertEquals(2, split.totalParts);
+        assertEquals("SOS! محمد أحمد needs help!", split.messages.get(0));
+        assertTrue(GsmSegmentPlanner.isGsm7(split.messages.get(1)));
+    }
+
+    @Test
+    public void transliterationWinsTieOnFewerMessages() {
+        GsmSegmentPlanner.Layout layout = GsmSegmentPlanner.plan(ARABIC_SOS, true, true);
+        assertEquals(GsmSegmentPlanner.Layout.TRANSLITERATED, layout.kind);
+        assertEquals(1, layout.messages.size());
+        assertEquals(2, layout.totalParts);
+        assertTrue(GsmSegmentPlanner.isGsm7(layout.messages.get(0)));
+    }
+
+    @Test
+    public void untransliterableTextStaysAsIs() {
+        GsmSegmentPlanner.Layout layout = GsmSegmentPlanner.plan("Help 😀", true, true);
+        assertEquals(GsmSegmentPlanner.Layout.AS_IS, layout.kind);
+        assertFalse(GsmSegmentPlanner.isGsm7(layout.messages.get(0)));
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.road_helperr;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class MultiPressDetectorTest {
+
+    private final VirtualClock clock = new VirtualClock();
+
+    private MultiPressDetector detector() {
+        return new MultiPressDetector(3, 2000, 100, 60, clock);
+    }
+
+    @Test
+    public void triggersOnThirdPressInsideWindow() {
+        MultiPressDetector detector = detector();
+        assertEquals(MultiPressDetector.COUNTED, detector.onPress());
+        clock.advance(400);
+        assertEquals(MultiPressDetector.COUNTED, detector.onPress());
+        clock.advance(400);
+        assertEquals(MultiPressDetector.TRIGGERED, detector.onPress());
+        assertEquals(800, detector.lastTriggerSpanMs());
+        assertEquals(0, detector.pendingPresses());
+    }
+
+    @Test
+    public void windowSlidesOverOlderPresses() {
+        MultiPressDetector detector = detector();
+        detector.onPress();
+        clock.advance(1500);
+        detector.onPress();
+        clock.advance(1000);
+        // First press is now 2500 ms old, so only two are in the window
+        assertEquals(MultiPressDetector.COUNTED, detector.onPress());
+        assertEquals(2, detector.pendingPresses());
+        clock.advance(500);
+        assertEquals(MultiPressDetector.TRIGGERED, detector.onPress());
+        assertEquals(1500, detector.lastTriggerSpanMs());
+    }
+
+    @Test
+    public void restartsAfterLongPause() {
+        MultiPressDetector detector = detector();
+        detector.onPress();
+        clock.advance(300);
+        detector.onPress();
+        clock.advance(2001);
+        assertEquals(MultiPressDetector.RESTARTED, detector.onPress());
+        assertEquals(1, detector.pendingPresses());
+        clock.advance(300);
+        assertEquals(MultiPressDetector.COUNTED, detector.onPress());
+        clock.advance(300);
+        assertEquals(MultiPressDetector.TRIGGERED, detector.onPress());
+    }
+
+    @Test
+    public void ignoresPressesCloserThanMinimumSpacing() {
+        MultiPressDetector detector = detector();
+        detector.onPress();
+        clock.advance(50);
+        assertEquals(MultiPressDetector.TOO_SOON, detector.onPress());
+        clock.advance(50);
+        assertEquals(MultiPressDetector.COUNTED, detector.onPress());
+        clock.advance(99);
+        assertEquals(MultiPressDetector.TOO_SOON, detector.onPress());
+        assertEquals(2, detector.pendingPresses());
+    }
+
+    @Test
+    public void onlyScreenOffTransitionsCount() {
+        MultiPressDetector detector = detector();
+        assertEquals(MultiPressDetector.COUNTED, detector.onScreenState(false));
+        clock.advance(300);
+        assertEquals(MultiPressDetector.DEBOUNCED, detector.onScreenState(true));
+        clock.advance(300);
+        assertEquals(MultiPressDetector.COUNTED, detector.onScreenState(false));
+        clock.advance(300);
+        assertEquals(MultiPressDetector.DEBOUNCED, detector.onScreenState(true));
+        clock.advance(300);
+        assertEquals(MultiPressDetector.TRIGGERED, detector.onScreenState(false));
+    }
+
+    @Test
+    public void timeoutThenWakeAndLockDoesNotTrigger() {
+        MultiPressDetector detector = detector();
+        // Screen times out, the user wakes it and locks it again
+        assertEquals(MultiPressDetector.COUNTED, detector.onScreenState(false));
+        clock.advance(400);
+        assertEquals(MultiPressDetector.DEBOUNCED, detector.onScreenState(true));
+        clock.advance(400);
+        assertEquals(MultiPressDetector.COUNTED, detector.onScreenState(false));
+        assertEquals(2, detector.pendingPresses());
+    }
+
+    @Test
+    public void debouncesRepeatedStatesAndPairHalves() {
+        MultiPressDetector detector = detector();
+        assertEquals(MultiPressDetector.COUNTED, detector.onScreenState(false));
+        clock.advance(300);
+        assertEquals(MultiPressDetector.DEBOUNCED, detector.onScreenState(false));
+        clock.advance(300);
+        assertEquals(MultiPressDetector.DEBOUNCED, detector.onScreenState(true));
+        // An off right behind the on belongs to the same press
+        clock.advance(20);
+        assertEquals(MultiPressDetector.DEBOUNCED, detector.onScreenState(false));
+        assertEquals(1, detector.pendingPresses());
+        clock.advance(400);
+        assertEquals(MultiPressDetector.DEBOUNCED, detector.onScreenState(true));
+        clock.advance(400);
+        assertEquals(MultiPressDetector.COUNTED, detector.onScreenState(false));
+        assertEquals(2, detector.pendingPresses());
+    }
+
+    @Test
+    public void startsFreshAfterTrigger() {
+        MultiPressDetector detector = detector();
+        for (int i = 0; i < 3; i++) {
+            detector.onPress();
+            clock.advance(200);
+        }
+        assertEquals(MultiPressDetector.COUNTED, detector.onPress());
+        clock.advance(200);
+        assertEquals(MultiPressDetector.COUNTED, detector.onPress());
+        clock.advance(200);
+        assertEquals(MultiPressDetector.TRIGGERED, detector.onPress());
+    }
+
+    @Test
+    public void singlePressDetector() {
+        MultiPressDetector detector = new MultiPressDetector(1, 2000, 100, 60, clock);
+        assertEquals(MultiPressDetector.TRIGGERED, detector.onPress());
+        assertEquals(0, detector.lastTriggerSpanMs());
+    }
+}
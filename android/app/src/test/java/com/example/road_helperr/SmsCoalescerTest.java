@@ -0,0 +1,94 @@
+package com.example.road_helperr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class SmsCoalescerTest {
+
+    private static final String KEY = SmsCoalescer.key("+201001234567", "sos");
+
+    private static SmsCoalescer coalescer(long windowMs) {
+        SmsCoalescer coalescer = new SmsCoalescer();
+        coalescer.setWindowMs(windowMs);
+        return coalescer;
+    }
+
+    @Test
+    public void keyIgnoresNumberFormatting() {
+        assertEquals(KEY, SmsCoalescer.key("+20 100-123-4567", "sos"));
+        assertEquals("201001234567|sos", SmsCoalescer.key("20+1001234567", "sos"));
+    }
+
+    @Test
+    public void sendsInsideTheWindowShareTheFirstRequest() {
+        SmsCoalescer coalescer = coalescer(30000);
+        assertEquals(1, coalescer.join(KEY, 1, 0));
+        assertEquals(1, coalescer.join(KEY, 2, 10000));
+        assertEquals(1, coalescer.join(KEY, 3, 29999));
+    }
+
+    @Test
+    public void windowEdgeStartsANewRequest() {
+        SmsCoalescer coalescer = coalescer(30000);
+        coalescer.join(KEY, 1, 0);
+        assertEquals(2, coalescer.join(KEY, 2, 30000));
+        assertEquals(2, coalescer.join(KEY, 3, 30001));
+    }
+
+    @Test
+    public void coalescedSendsDoNotExtendTheWindow() {
+        SmsCoalescer coalescer = coalescer(30000);
+        coalescer.join(KEY, 1, 0);
+        assertEquals(1, coalescer.join(KEY, 2, 25000));
+        // Measured from the first send, not from the latest caller
+        assertEquals(3, coalescer.join(KEY, 3, 30000));
+    }
+
+    @Test
+    public void otherRecipientsAndPayloadClassesAreSeparate() {
+        SmsCoalescer coalescer = coalescer(30000);
+        coalescer.join(KEY, 1, 0);
+        assertEquals(2, coalescer.join(SmsCoalescer.key("+201001234567", "sos-data"), 2, 0));
+        assertEquals(3, coalescer.join(SmsCoalescer.key("+201007654321", "sos"), 3, 0));
+    }
+
+    @Test
+    public void successIsKeptForLateCallersUntilTheWindowEnds() {
+        SmsCoalescer coalescer = coalescer(30000);
+        coalescer.join(KEY, 1, 0);
+        assertNull(coalescer.finalStatus(1));
+        Map<String, Object> status = new HashMap<>();
+        status.put("success", true);
+        coalescer.onFinalStatus(1, true, status);
+
+        assertEquals(1, coalescer.join(KEY, 2, 5000));
+        assertSame(status, coalescer.finalStatus(1));
+
+        coalescer.join(KEY, 3, 30000);
+        assertNull(coalescer.finalStatus(1));
+    }
+
+    @Test
+    public void failureIsForgottenSoARetrySendsAgain() {
+        SmsCoalescer coalescer = coalescer(30000);
+        coalescer.join(KEY, 1, 0);
+        coalescer.onFinalStatus(1, false, null);
+        assertNull(coalescer.finalStatus(1));
+        assertEquals(2, coalescer.join(KEY, 2, 1000));
+    }
+
+    @Test
+    public void zeroWindowDisablesCoalescing() {
+        SmsCoalescer coalescer = coalescer(30000);
+        coalescer.join(KEY, 1, 0);
+        coalescer.setWindowMs(0);
+        assertEquals(2, coalescer.join(KEY, 2, 0));
+        assertEquals(3, coalescer.join(KEY, 3, 0));
+    }
+}
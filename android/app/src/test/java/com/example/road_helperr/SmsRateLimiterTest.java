@@ -0,0 +1,83 @@
+package com.example.road_helperr;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class SmsRateLimiterTest {
+
+    private static final int SIM = 1;
+
+    private static SmsRateLimiter limiter(int burst, long refillIntervalMs) {
+        SmsRateLimiter limiter = new SmsRateLimiter();
+        limiter.configure(burst, refillIntervalMs);
+        return limiter;
+    }
+
+    @Test
+    public void burstGoesOutAtOnceAndTheRestIsSpaced() {
+        SmsRateLimiter limiter = limiter(3, 1000);
+        assertEquals(0, limiter.reserve(SIM, 0));
+        assertEquals(0, limiter.reserve(SIM, 0));
+        assertEquals(0, limiter.reserve(SIM, 0));
+        assertEquals(1000, limiter.reserve(SIM, 0));
+        assertEquals(2000, limiter.reserve(SIM, 0));
+    }
+
+    @Test
+    public void permitIsValidExactlyOnTheRefillBoundary() {
+        SmsRateLimiter limiter = limiter(2, 1500);
+        limiter.reserve(SIM, 0);
+        limiter.reserve(SIM, 0);
+        assertEquals(1, limiter.reserve(SIM, 1499));
+
+        limiter = limiter(2, 1500);
+        limiter.reserve(SIM, 0);
+        limiter.reserve(SIM, 0);
+        assertEquals(0, limiter.reserve(SIM, 1500));
+        assertEquals(1500, limiter.reserve(SIM, 1500));
+    }
+
+    @Test
+    public void partialRefillShortensTheWait() {
+        SmsRateLimiter limiter = limiter(1, 1500);
+        limiter.reserve(SIM, 0);
+        assertEquals(1000, limiter.reserve(SIM, 500));
+        // The reserved permit is used at 1500, so the next one is a full interval after it
+        assertEquals(1500, limiter.reserve(SIM, 1500));
+    }
+
+    @Test
+    public void idleBucketRefillsOnlyUpToTheBurst() {
+        SmsRateLimiter limiter = limiter(2, 1000);
+        limiter.reserve(SIM, 0);
+        limiter.reserve(SIM, 0);
+        assertEquals(0, limiter.reserve(SIM, 60000));
+        assertEquals(0, limiter.reserve(SIM, 60000));
+        assertEquals(1000, limiter.reserve(SIM, 60000));
+    }
+
+    @Test
+    public void simsHaveSeparateBuckets() {
+        SmsRateLimiter limiter = limiter(1, 1000);
+        assertEquals(0, limiter.reserve(SIM, 0));
+        assertEquals(0, limiter.reserve(2, 0));
+        assertEquals(1000, limiter.reserve(SIM, 0));
+    }
+
+    @Test
+    public void zeroIntervalDisablesPacing() {
+        SmsRateLimiter limiter = limiter(1, 0);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, limiter.reserve(SIM, 0));
+        }
+    }
+
+    @Test
+    public void reconfiguringStartsWithFullBuckets() {
+        SmsRateLimiter limiter = limiter(1, 1000);
+        limiter.reserve(SIM, 0);
+        limiter.configure(1, 1000);
+        assertEquals(0, limiter.reserve(SIM, 0));
+    }
+}
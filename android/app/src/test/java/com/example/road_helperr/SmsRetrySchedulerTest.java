@@ -0,0 +1,60 @@
+package com.example.road_helperr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SmsRetrySchedulerTest {
+
+    private static final long BASE = 2000;
+    private static final long MAX = 60000;
+
+    // Just below 1, the largest jitter the random source can produce
+    private static final double MAX_JITTER = Math.nextDown(1.0);
+
+    private static long delay(int retriesSoFar, double jitter) {
+        return SmsRetryScheduler.backoffDelayMs(retriesSoFar, BASE, MAX, jitter);
+    }
+
+    @Test
+    public void doublesEachRound() {
+        assertEquals(1000, delay(0, 0));
+        assertEquals(2000, delay(1, 0));
+        assertEquals(4000, delay(2, 0));
+        assertEquals(8000, delay(3, 0));
+    }
+
+    @Test
+    public void jitterAddsUpToHalfTheCeiling() {
+        assertEquals(2000, delay(0, MAX_JITTER));
+        assertEquals(1500, delay(0, 0.5));
+        assertEquals(8000, delay(2, MAX_JITTER));
+    }
+
+    @Test
+    public void cappedAtTheMaximum() {
+        // 2000 << 5 = 64000, past the 60000 cap
+        assertEquals(30000, delay(5, 0));
+        assertEquals(60000, delay(5, MAX_JITTER));
+        assertEquals(60000, delay(12, MAX_JITTER));
+    }
+
+    @Test
+    public void largeRoundCountsDoNotOverflow() {
+        assertEquals(30000, delay(Integer.MAX_VALUE, 0));
+        assertEquals(60000, delay(Integer.MAX_VALUE, MAX_JITTER));
+    }
+
+    @Test
+    public void everyDelayStaysWithinHalfAndFullCeiling() {
+        for (int round = 0; round < 8; round++) {
+            long ceiling = Math.min(MAX, BASE << round);
+            for (double jitter = 0; jitter < 1; jitter += 0.01) {
+                long delayMs = delay(round, jitter);
+                assertTrue(delayMs >= ceiling / 2);
+                assertTrue(delayMs <= ceiling);
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.road_helperr;
+
+/** A clock the tests move by hand. */
+final class VirtualClock implements MultiPressDetector.Clock {
+    long now = 1_000_000;
+
+    @Override
+    public long elapsedRealtime() {
+        return now;
+    }
+
+    void advance(long ms) {
+        now += ms;
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.road_helperr;
+
+import static org.junit.Assert.assertEquals;
+
+import android.view.KeyEvent;
+
+import org.junit.Test;
+
+public class VolumePatternDetectorTest {
+
+    private final VirtualClock clock = new VirtualClock();
+
+    private VolumePatternDetector detector() {
+        return new VolumePatternDetector(new MultiPressDetector(VolumePatternDetector.DEFAULT_PRESSES, 5000, 100, 60,
+                clock));
+    }
+
+    private int press(VolumePatternDetector detector, int keyCode) {
+        clock.advance(300);
+        return detector.onKey(keyCode);
+    }
+
+    @Test
+    public void triggersOnAlternatingPattern() {
+        VolumePatternDetector detector = detector();
+        for (int i = 0; i < 5; i++) {
+            int keyCode = i % 2 == 0 ? KeyEvent.KEYCODE_VOLUME_UP : KeyEvent.KEYCODE_VOLUME_DOWN;
+            assertEquals(MultiPressDetector.COUNTED, press(detector, keyCode));
+        }
+        assertEquals(MultiPressDetector.TRIGGERED, press(detector, KeyEvent.KEYCODE_VOLUME_DOWN));
+    }
+
+    @Test
+    public void repeatedKeyNeverTriggers() {
+        VolumePatternDetector detector = detector();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(MultiPressDetector.COUNTED, press(detector, KeyEvent.KEYCODE_VOLUME_DOWN));
+        }
+        assertEquals(1, detector.pendingPresses());
+    }
+
+    @Test
+    public void repeatedKeyRestartsPattern() {
+        VolumePatternDetector detector = detector();
+        press(detector, KeyEvent.KEYCODE_VOLUME_UP);
+        press(detector, KeyEvent.KEYCODE_VOLUME_DOWN);
+        press(detector, KeyEvent.KEYCODE_VOLUME_UP);
+        press(detector, KeyEvent.KEYCODE_VOLUME_UP);
+        assertEquals(1, detector.pendingPresses());
+        press(detector, KeyEvent.KEYCODE_VOLUME_DOWN);
+        press(detector, KeyEvent.KEYCODE_VOLUME_UP);
+        press(detector, KeyEvent.KEYCODE_VOLUME_DOWN);
+        press(detector, KeyEvent.KEYCODE_VOLUME_UP);
+        assertEquals(MultiPressDetector.TRIGGERED, press(detector, KeyEvent.KEYCODE_VOLUME_DOWN));
+    }
+}
@@ -336,6 +336,10 @@ Future<void> _initializeSOSServices() async {
 
           debugPrint('🚨 MAIN: ===== SOS PROCESS COMPLETED =====');
         });
+        powerButtonDetector.setNativeSosCallback((summary) {
+          SOSService().onNativeSosDispatched(summary);
+        });
+        await powerButtonDetector.restoreSosService();
         debugPrint('✅ Android Power Button Detector initialized');
       } else if (Platform.isIOS) {
         debugPrint(
@@ -29,6 +29,17 @@ class AccessibilityService {
     }
   }
 
+  /// Arms or disarms the service's key triggers; while disarmed it takes no
+  /// key events at all.
+  static Future<void> setSosArmed(bool armed) async {
+    try {
+      await _channel.invokeMethod('setSosArmed', {'armed': armed});
+      debugPrint('✅ AccessibilityService: SOS armed: $armed');
+    } catch (e) {
+      debugPrint('❌ AccessibilityService: Error setting SOS arming: $e');
+    }
+  }
+
   /// التحقق من الحالة وإظهار رسالة إذا لزم الأمر
   static Future<bool> checkAndPromptIfNeeded() async {
     final isEnabled = await isAccessibilityServiceEnabled();
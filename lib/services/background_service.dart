@@ -1,7 +1,5 @@
-import 'dart:async';
 import 'package:flutter_background_service/flutter_background_service.dart';
 import 'package:device_info_plus/device_info_plus.dart';
-import 'sos_service.dart';
 
 class BackgroundServiceHandler {
   static Future<void> initializeService() async {
@@ -55,33 +53,9 @@ class BackgroundServiceHandler {
       print('Error getting device info: $e');
     }
 
-    // Power button press detection logic
-    int powerButtonPressCount = 0;
-    Timer? resetTimer;
-
-    service.on('powerButtonPressed').listen((event) {
-      powerButtonPressCount++;
-      resetTimer?.cancel();
-      resetTimer = Timer(const Duration(seconds: 2), () {
-        powerButtonPressCount = 0;
-      });
-
-      if (powerButtonPressCount >= 3) {
-        SOSService().onPowerButtonPressed();
-        powerButtonPressCount = 0;
-      }
-    });
-
-    // Keep the service alive
-    Timer.periodic(const Duration(seconds: 1), (timer) async {
-      if (service is AndroidServiceInstance) {
-        if (await service.isForegroundService()) {
-          service.setForegroundNotificationInfo(
-            title: 'SOS Service Active',
-            content: 'Triple press power button for emergency',
-          );
-        }
-      }
-    });
+    // Power presses are detected and the SOS is sent natively
+    // (SosForegroundService, PowerButtonReceiver), never from this isolate.
+    // The SOS notification is owned by the native SosForegroundService,
+    // which only updates it when its state changes; nothing to poll here
   }
 }
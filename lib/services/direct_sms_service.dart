@@ -10,23 +10,257 @@ class DirectSmsService {
   // Callback for SMS status changes
   Function(SmsStatus)? onSmsStatusChanged;
 
+  // Callback for delivery reports from the recipient's phone
+  Function(SmsDeliveryReport)? onSmsDelivered;
+
+  /// Dispatch modes understood by the native side.
+  static const String modeHedged = 'hedged';
+  static const String modeFailoverOnly = 'failover-only';
+  static const String modeBroadcastAll = 'broadcast-all';
+
   DirectSmsService() {
     // Set up status channel listener
     statusChannel.setMethodCallHandler(_handleStatusCall);
   }
 
+  /// Sets how additional SIMs are used for every later send that does not
+  /// pass its own mode. Defaults to [modeHedged] on the native side.
+  Future<bool> setDispatchMode(String mode) async {
+    try {
+      return await platform.invokeMethod('setDispatchMode', {'mode': mode}) ==
+          true;
+    } catch (e) {
+      print('Error in DirectSmsService.setDispatchMode: $e');
+      return false;
+    }
+  }
+
   Future<dynamic> _handleStatusCall(MethodCall call) async {
-    if (call.method == 'onSmsSentStatus') {
-      final Map<dynamic, dynamic> data = call.arguments;
+    if (call.method == 'onSmsSentStatusBatch') {
+      // Events arrive in publish order; each keeps its own method name
+      for (final Map<dynamic, dynamic> data in call.arguments) {
+        _handleStatusEvent(data['event'] ?? '', data);
+      }
+    } else {
+      _handleStatusEvent(call.method, call.arguments);
+    }
+  }
+
+  void _handleStatusEvent(String method, Map<dynamic, dynamic> data) {
+    final int sequence = data['seq'] ?? 0;
+    if (method == 'onSmsSentStatus') {
       final status = SmsStatus(
         success: data['success'] ?? false,
+        requestId: data['requestId'] ?? -1,
+        batchId: data['batchId'] ?? -1,
         phoneNumber: data['phoneNumber'] ?? '',
         simId: data['simId'] ?? -1,
         errorReason: data['errorReason'] ?? '',
         isRetry: data['isRetry'] ?? false,
+        partCount: data['partCount'] ?? 1,
+        failedPartIndex: data['failedPartIndex'] ?? -1,
+        lastPartLatencyMs: data['lastPartLatencyMs'] ?? 0,
+        sequence: sequence,
       );
 
       onSmsStatusChanged?.call(status);
+    } else if (method == 'onSmsDelivered') {
+      onSmsDelivered?.call(SmsDeliveryReport(
+        delivered: data['delivered'] ?? false,
+        requestId: data['requestId'] ?? -1,
+        batchId: data['batchId'] ?? -1,
+        phoneNumber: data['phoneNumber'] ?? '',
+        simId: data['simId'] ?? -1,
+        sentLatencyMs: data['sentLatencyMs'] ?? 0,
+        deliveryLatencyMs: data['deliveryLatencyMs'] ?? 0,
+        sequence: sequence,
+      ));
+    }
+  }
+
+  /// Snapshot of the native SMS counters (enqueued, sent, failed, retries,
+  /// hedges fired, per-code attempt results), queue depths and latency
+  /// histograms. With [reset] the counters and histograms start from zero.
+  Future<Map<String, dynamic>> getSmsMetrics({bool reset = false}) async {
+    try {
+      final Map<dynamic, dynamic> result =
+          await platform.invokeMethod('getSmsMetrics', {'reset': reset});
+      return Map<String, dynamic>.from(result);
+    } catch (e) {
+      print('Error in DirectSmsService.getSmsMetrics: $e');
+      return {};
+    }
+  }
+
+  /// Sent and delivered latency histograms (count, mean, p50/p90/p99, max)
+  /// per SIM and carrier, e.g. {sent: {'sim1/Vodafone': {...}}, delivered: ...}.
+  Future<Map<String, dynamic>> getSmsLatencyStats({bool reset = false}) async {
+    try {
+      final Map<dynamic, dynamic> result =
+          await platform.invokeMethod('getSmsLatencyStats', {'reset': reset});
+      return Map<String, dynamic>.from(result);
+    } catch (e) {
+      print('Error in DirectSmsService.getSmsLatencyStats: $e');
+      return {};
+    }
+  }
+
+  /// Sends to the same recipient with the same `payloadClass` (by default the
+  /// message text) within [window] are folded into one native request, and
+  /// every caller gets its status. [Duration.zero] turns coalescing off.
+  Future<bool> setCoalescingWindow(Duration window) async {
+    try {
+      return await platform.invokeMethod(
+              'setCoalescingWindow', {'windowMs': window.inMilliseconds}) ==
+          true;
+    } catch (e) {
+      print('Error in DirectSmsService.setCoalescingWindow: $e');
+      return false;
+    }
+  }
+
+  /// Stages what the native SOS executor needs to send an alert on a triple
+  /// press without Dart: formatted [contacts], the [appPeers] among them that
+  /// get the binary SOS, the [senderName] and a [messageTemplate] with
+  /// `{name}`, `{latitude}`, `{longitude}` and `{battery}` placeholders.
+  Future<bool> stageSosProfile({
+    required List<String> contacts,
+    List<String> appPeers = const [],
+    String senderName = '',
+    String? messageTemplate,
+  }) async {
+    try {
+      return await platform.invokeMethod('stageSosProfile', {
+            'contacts': contacts,
+            'appPeers': appPeers,
+            'senderName': senderName,
+            'messageTemplate': messageTemplate,
+          }) ==
+          true;
+    } catch (e) {
+      print('Error in DirectSmsService.stageSosProfile: $e');
+      return false;
+    }
+  }
+
+  /// Offers a fix to the native SOS snapshot, which keeps it only if it is
+  /// newer or more accurate than the one it already has.
+  Future<bool> stageSosLocation({
+    required double latitude,
+    required double longitude,
+    double? accuracy,
+    DateTime? timestamp,
+  }) async {
+    try {
+      return await platform.invokeMethod('stageSosLocation', {
+            'latitude': latitude,
+            'longitude': longitude,
+            if (accuracy != null) 'accuracyM': accuracy,
+            'timestampMs':
+                (timestamp ?? DateTime.now()).millisecondsSinceEpoch,
+          }) ==
+          true;
+    } catch (e) {
+      print('Error in DirectSmsService.stageSosLocation: $e');
+      return false;
+    }
+  }
+
+  /// What the native side would send right now: `batteryLevel` (-1 if
+  /// unknown), the rendered `body` and, once there is a fix, `latitude`,
+  /// `longitude`, `accuracyM`, `fixTimeMs` and `ageMs`. Empty on failure.
+  Future<Map<String, dynamic>> getSosSnapshot() async {
+    try {
+      final Map<dynamic, dynamic> result =
+          await platform.invokeMethod('getSosSnapshot');
+      return Map<String, dynamic>.from(result);
+    } catch (e) {
+      print('Error in DirectSmsService.getSosSnapshot: $e');
+      return {};
+    }
+  }
+
+  /// Copy of the native SOS event trace, oldest record first. Each record
+  /// has `seq`, `event`, `timeNs` (elapsed since boot) and three `args`;
+  /// add `bootTimeMs` to convert times to wall clock.
+  Future<Map<String, dynamic>> dumpTrace() async {
+    try {
+      final Map<dynamic, dynamic> result =
+          await platform.invokeMethod('dumpTrace');
+      return Map<String, dynamic>.from(result);
+    } catch (e) {
+      print('Error in DirectSmsService.dumpTrace: $e');
+      return {};
+    }
+  }
+
+  /// Writes the native SOS event trace to a file in the app's files
+  /// directory and returns its path, or null if it could not be written.
+  Future<String?> exportTrace() async {
+    try {
+      return await platform.invokeMethod('dumpTrace', {'toFile': true});
+    } catch (e) {
+      print('Error in DirectSmsService.exportTrace: $e');
+      return null;
+    }
+  }
+
+  /// Paces sends per SIM: up to [burst] SMS go out at once, then one more
+  /// every [refillInterval]. A zero interval turns rate limiting off.
+  Future<bool> setRateLimit({
+    int burst = 5,
+    Duration refillInterval = const Duration(milliseconds: 1500),
+  }) async {
+    try {
+      return await platform.invokeMethod('setRateLimit', {
+            'burst': burst,
+            'refillIntervalMs': refillInterval.inMilliseconds,
+          }) ==
+          true;
+    } catch (e) {
+      print('Error in DirectSmsService.setRateLimit: $e');
+      return false;
+    }
+  }
+
+  /// Controls how a message that does not fit the GSM-7 alphabet is laid
+  /// out. With [splitNonGsm] the non-GSM lines (e.g. an Arabic name) go in a
+  /// separate SMS so the coordinates stay GSM-7; with [transliterate] they may
+  /// be romanised instead. Either is only used when it needs fewer SMS parts.
+  Future<bool> setMessagePlanning({
+    bool splitNonGsm = true,
+    bool transliterate = false,
+  }) async {
+    try {
+      return await platform.invokeMethod('setMessagePlanning', {
+            'splitNonGsm': splitNonGsm,
+            'transliterate': transliterate,
+          }) ==
+          true;
+    } catch (e) {
+      print('Error in DirectSmsService.setMessagePlanning: $e');
+      return false;
+    }
+  }
+
+  /// Sets how often a message is retried after it failed on every SIM.
+  /// Retries back off exponentially (with jitter) from [baseDelay] up to
+  /// [maxDelay]; "no service" failures instead wait for a SIM to regain service.
+  Future<bool> setRetryPolicy({
+    int maxRetries = 3,
+    Duration baseDelay = const Duration(seconds: 2),
+    Duration maxDelay = const Duration(seconds: 60),
+  }) async {
+    try {
+      return await platform.invokeMethod('setRetryPolicy', {
+            'maxRetries': maxRetries,
+            'baseDelayMs': baseDelay.inMilliseconds,
+            'maxDelayMs': maxDelay.inMilliseconds,
+          }) ==
+          true;
+    } catch (e) {
+      print('Error in DirectSmsService.setRetryPolicy: $e');
+      return false;
     }
   }
 
@@ -34,6 +268,8 @@ class DirectSmsService {
     required String phoneNumber,
     required String message,
     Duration timeout = const Duration(seconds: 45),
+    String? mode,
+    String? payloadClass,
   }) async {
     try {
       final Completer<bool> completer = Completer<bool>();
@@ -46,10 +282,15 @@ class DirectSmsService {
         }
       });
 
-      // Set up status listener for this specific SMS
+      // Set up status listener for this specific SMS. Once the native side has
+      // accepted the request, statuses are matched by its request id.
+      int? requestId;
       Function(SmsStatus)? originalCallback = onSmsStatusChanged;
       onSmsStatusChanged = (SmsStatus status) {
-        if (status.phoneNumber == phoneNumber) {
+        final bool matches = requestId != null && status.requestId != -1
+            ? status.requestId == requestId
+            : status.phoneNumber == phoneNumber;
+        if (matches) {
           if (!completer.isCompleted) {
             completer.complete(status.success);
           }
@@ -59,14 +300,20 @@ class DirectSmsService {
         originalCallback?.call(status);
       };
 
-      // Send the SMS
-      final bool result = await platform.invokeMethod('sendDirectSms', {
+      // Queue the SMS; the native side returns an accepted handle right away
+      final dynamic handle = await platform.invokeMethod('sendDirectSms', {
         'phoneNumber': phoneNumber,
         'message': message,
+        if (mode != null) 'mode': mode,
+        if (payloadClass != null) 'payloadClass': payloadClass,
       });
+      final bool accepted = handle is Map && handle['accepted'] == true;
+      if (accepted) {
+        requestId = handle['requestId'];
+      }
 
-      // If the method call itself failed, complete immediately
-      if (!result) {
+      // If the request was not accepted, complete immediately
+      if (!accepted) {
         timeoutTimer.cancel();
         onSmsStatusChanged = originalCallback;
         return false;
@@ -84,4 +331,131 @@ class DirectSmsService {
       return false;
     }
   }
+
+  /// Sends [message] to all [phoneNumbers] with a single native call. The
+  /// recipients are sent in parallel on the native side; the returned map holds
+  /// the first reported result per phone number once every recipient has
+  /// reported or [timeout] expires.
+  Future<Map<String, bool>> sendDirectSmsBatch({
+    required List<String> phoneNumbers,
+    required String message,
+    Duration timeout = const Duration(seconds: 45),
+    Function(SmsStatus)? onRecipientStatus,
+    String? mode,
+    String? payloadClass,
+  }) {
+    return _sendBatch(
+      phoneNumbers: phoneNumbers,
+      arguments: {
+        'phoneNumbers': phoneNumbers,
+        'message': message,
+        if (mode != null) 'mode': mode,
+        if (payloadClass != null) 'payloadClass': payloadClass,
+      },
+      timeout: timeout,
+      onRecipientStatus: onRecipientStatus,
+    );
+  }
+
+  /// Sends the SOS as a compact binary data SMS that fits a single PDU.
+  /// Only recipients that run the app can read it, so callers should use
+  /// [sendDirectSmsBatch] for everyone else and for recipients that fail
+  /// here. [message] is what an interrupted send replays after a restart.
+  Future<Map<String, bool>> sendSosDataBatch({
+    required List<String> phoneNumbers,
+    required String message,
+    required double latitude,
+    required double longitude,
+    int? batteryLevel,
+    String senderId = '',
+    Duration timeout = const Duration(seconds: 45),
+    Function(SmsStatus)? onRecipientStatus,
+    String? mode,
+    String? payloadClass,
+  }) {
+    return _sendBatch(
+      phoneNumbers: phoneNumbers,
+      arguments: {
+        'phoneNumbers': phoneNumbers,
+        'message': message,
+        'sosData': {
+          'latitude': latitude,
+          'longitude': longitude,
+          if (batteryLevel != null) 'batteryLevel': batteryLevel,
+          'timestampMs': DateTime.now().millisecondsSinceEpoch,
+          'senderId': senderId,
+        },
+        if (mode != null) 'mode': mode,
+        if (payloadClass != null) 'payloadClass': payloadClass,
+      },
+      timeout: timeout,
+      onRecipientStatus: onRecipientStatus,
+    );
+  }
+
+  Future<Map<String, bool>> _sendBatch({
+    required List<String> phoneNumbers,
+    required Map<String, dynamic> arguments,
+    required Duration timeout,
+    Function(SmsStatus)? onRecipientStatus,
+  }) async {
+    final Map<String, bool> results = {
+      for (final phoneNumber in phoneNumbers) phoneNumber: false
+    };
+    if (phoneNumbers.isEmpty) {
+      return results;
+    }
+
+    final Completer<void> completer = Completer<void>();
+    final Map<int, String> pending = {};
+    final List<SmsStatus> earlyStatuses = [];
+    bool handleReceived = false;
+
+    void record(SmsStatus status) {
+      final String? phoneNumber = pending.remove(status.requestId);
+      if (phoneNumber == null) {
+        return;
+      }
+      results[phoneNumber] = status.success;
+      onRecipientStatus?.call(status);
+      if (pending.isEmpty && !completer.isCompleted) {
+        completer.complete();
+      }
+    }
+
+    Function(SmsStatus)? originalCallback = onSmsStatusChanged;
+    onSmsStatusChanged = (SmsStatus status) {
+      if (handleReceived) {
+        record(status);
+      } else {
+        earlyStatuses.add(status);
+      }
+      originalCallback?.call(status);
+    };
+
+    try {
+      final dynamic handle =
+          await platform.invokeMethod('sendDirectSmsBatch', arguments);
+      if (handle is! Map || handle['accepted'] != true) {
+        return results;
+      }
+
+      final List<dynamic> requestIds = handle['requestIds'] ?? [];
+      for (int i = 0; i < requestIds.length && i < phoneNumbers.length; i++) {
+        pending[requestIds[i] as int] = phoneNumbers[i];
+      }
+      handleReceived = true;
+      earlyStatuses.forEach(record);
+
+      if (pending.isNotEmpty) {
+        await completer.future.timeout(timeout, onTimeout: () {});
+      }
+      return results;
+    } catch (e) {
+      print('Error in DirectSmsService.sendDirectSmsBatch: $e');
+      rethrow;
+    } finally {
+      onSmsStatusChanged = originalCallback;
+    }
+  }
 }
@@ -1,20 +1,63 @@
 class SmsStatus {
   final bool success;
+  final int requestId;
+  final int batchId;
   final String phoneNumber;
   final int simId;
   final String errorReason;
   final bool isRetry;
+  final int partCount;
+  final int failedPartIndex;
+  final int lastPartLatencyMs;
+
+  /// Position of this event among all status events, in publish order.
+  final int sequence;
 
   SmsStatus({
     required this.success,
+    this.requestId = -1,
+    this.batchId = -1,
     required this.phoneNumber,
     required this.simId,
     this.errorReason = '',
     this.isRetry = false,
+    this.partCount = 1,
+    this.failedPartIndex = -1,
+    this.lastPartLatencyMs = 0,
+    this.sequence = 0,
+  });
+
+  @override
+  String toString() {
+    return 'SmsStatus{success: $success, requestId: $requestId, batchId: $batchId, phoneNumber: $phoneNumber, simId: $simId, errorReason: $errorReason, isRetry: $isRetry, partCount: $partCount, failedPartIndex: $failedPartIndex, lastPartLatencyMs: $lastPartLatencyMs, sequence: $sequence}';
+  }
+}
+
+class SmsDeliveryReport {
+  final bool delivered;
+  final int requestId;
+  final int batchId;
+  final String phoneNumber;
+  final int simId;
+  final int sentLatencyMs;
+  final int deliveryLatencyMs;
+
+  /// Position of this event among all status events, in publish order.
+  final int sequence;
+
+  SmsDeliveryReport({
+    required this.delivered,
+    this.requestId = -1,
+    this.batchId = -1,
+    required this.phoneNumber,
+    required this.simId,
+    this.sentLatencyMs = 0,
+    this.deliveryLatencyMs = 0,
+    this.sequence = 0,
   });
 
   @override
   String toString() {
-    return 'SmsStatus{success: $success, phoneNumber: $phoneNumber, simId: $simId, errorReason: $errorReason, isRetry: $isRetry}';
+    return 'SmsDeliveryReport{delivered: $delivered, requestId: $requestId, batchId: $batchId, phoneNumber: $phoneNumber, simId: $simId, sentLatencyMs: $sentLatencyMs, deliveryLatencyMs: $deliveryLatencyMs, sequence: $sequence}';
   }
 }
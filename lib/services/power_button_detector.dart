@@ -1,5 +1,10 @@
 import 'dart:async';
 import 'package:flutter/services.dart';
+import 'package:shared_preferences/shared_preferences.dart';
+
+/// Which plain screen on/off events the native side forwards. Triple presses
+/// and native SOS dispatches are always delivered.
+enum ScreenEventInterest { none, summary, all }
 
 class PowerButtonDetector {
   static final PowerButtonDetector _instance = PowerButtonDetector._internal();
@@ -10,6 +15,8 @@ class PowerButtonDetector {
       MethodChannel('com.example.road_helperr/power_button');
 
   Function? _onTriplePressCallback;
+  Function(Map<dynamic, dynamic>)? _onNativeSosCallback;
+  Function(Map<dynamic, dynamic>)? _onScreenSummaryCallback;
 
   Future<void> initialize() async {
     platform.setMethodCallHandler(_handleMethodCall);
@@ -39,6 +46,16 @@ class PowerButtonDetector {
             print('❌ PowerButtonDetector: No callback set for triple press!');
           }
           break;
+        case 'onScreenStateSummary':
+          // screenOn, screenOff, debounced, isScreenOn, periodMs
+          _onScreenSummaryCallback
+              ?.call(call.arguments as Map<dynamic, dynamic>);
+          break;
+        case 'onNativeSosDispatched':
+          // The SOS already went out natively; this is for UI and analytics
+          print('🚨 PowerButtonDetector: SOS dispatched natively');
+          _onNativeSosCallback?.call(call.arguments as Map<dynamic, dynamic>);
+          break;
         default:
           print('❓ PowerButtonDetector: Unknown method: ${call.method}');
       }
@@ -62,4 +79,48 @@ class PowerButtonDetector {
     print(
         '🔧 PowerButtonDetector: Callback set successfully. Callback is null: ${_onTriplePressCallback == null}');
   }
+
+  void setNativeSosCallback(Function(Map<dynamic, dynamic>) callback) {
+    _onNativeSosCallback = callback;
+  }
+
+  /// Starts or stops the native SOS foreground service, which keeps press
+  /// detection running in the background and owns the SOS notification.
+  Future<void> setSosServiceEnabled(bool enabled) async {
+    try {
+      await platform.invokeMethod('setSosServiceEnabled', {'enabled': enabled});
+    } catch (e) {
+      print('❌ PowerButtonDetector: Error toggling SOS service: $e');
+    }
+  }
+
+  /// Brings the SOS foreground service in line with the saved SOS settings.
+  Future<void> restoreSosService() async {
+    final prefs = await SharedPreferences.getInstance();
+    await setSosServiceEnabled(
+        (prefs.getBool('sos_service_enabled') ?? true) &&
+            (prefs.getBool('sos_power_button_enabled') ?? true));
+  }
+
+  /// Asks for plain screen events, which are dropped natively by default.
+  /// With [ScreenEventInterest.summary] they arrive as one
+  /// `onScreenStateSummary` per [summaryInterval] in which any happened.
+  Future<void> setScreenEventInterest(
+    ScreenEventInterest interest, {
+    Duration? summaryInterval,
+    Function(Map<dynamic, dynamic>)? onSummary,
+  }) async {
+    if (onSummary != null) {
+      _onScreenSummaryCallback = onSummary;
+    }
+    try {
+      await platform.invokeMethod('setScreenEventMode', {
+        'mode': interest.name,
+        if (summaryInterval != null)
+          'summaryIntervalMs': summaryInterval.inMilliseconds,
+      });
+    } catch (e) {
+      print('❌ PowerButtonDetector: Error setting screen event interest: $e');
+    }
+  }
 }
@@ -1,8 +1,40 @@
+import 'dart:async';
 import 'package:flutter/services.dart';
 
 class SimService {
   static const platform = MethodChannel('com.example.road_helperr/sim_service');
 
+  static final StreamController<Map<String, dynamic>> _changes =
+      StreamController<Map<String, dynamic>>.broadcast();
+  static bool _handlerSet = false;
+
+  /// Emits a snapshot ({version, sims, phoneCount}) whenever the active SIM
+  /// subscriptions change, e.g. a SIM is inserted, removed or disabled.
+  Stream<Map<String, dynamic>> get subscriptionChanges {
+    if (!_handlerSet) {
+      _handlerSet = true;
+      platform.setMethodCallHandler((call) async {
+        if (call.method == 'onSubscriptionsChanged') {
+          _changes.add(Map<String, dynamic>.from(call.arguments));
+        }
+      });
+    }
+    return _changes.stream;
+  }
+
+  /// The native side's cached subscription snapshot; the version only grows
+  /// when the set of SIMs actually changed.
+  Future<Map<String, dynamic>> getSubscriptionSnapshot() async {
+    try {
+      final Map<dynamic, dynamic> result =
+          await platform.invokeMethod('getSubscriptionSnapshot');
+      return Map<String, dynamic>.from(result);
+    } catch (e) {
+      print('Error getting subscription snapshot: $e');
+      return {'version': 0, 'sims': [], 'phoneCount': 0};
+    }
+  }
+
   Future<bool> hasDualSim() async {
     try {
       final bool result = await platform.invokeMethod('hasDualSim');
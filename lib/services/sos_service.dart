@@ -37,6 +37,9 @@ class SOSService {
     );
     await _notifications.initialize(initializationSettings);
 
+    // SOS sent by contacts that also run the app arrives as a binary data SMS
+    Telephony.instance.listenIncomingSosData(onSosData: _onSosDataReceived);
+
     // Load user data
     try {
       final prefs = await SharedPreferences.getInstance();
@@ -61,6 +64,9 @@ class SOSService {
       await prefs.remove('sosUserData');
     }
 
+    // Let a triple press send the SOS natively, even without this isolate
+    await stageNativeSos();
+
     // Start location tracking
     _startLocationTracking();
   }
@@ -72,6 +78,7 @@ class SOSService {
       _lastKnownLocation = await Geolocator.getCurrentPosition();
       print(
           '✅ SOS Location: Initial location obtained - ${_lastKnownLocation!.latitude}, ${_lastKnownLocation!.longitude}');
+      await _stageNativeLocation();
     } catch (e) {
       print('❌ SOS Location: Error getting initial location: $e');
     }
@@ -83,6 +90,7 @@ class SOSService {
         _lastKnownLocation = await Geolocator.getCurrentPosition();
         print(
             '🔄 SOS Location: Location updated - ${_lastKnownLocation!.latitude}, ${_lastKnownLocation!.longitude}');
+        await _stageNativeLocation();
       } catch (e) {
         print('❌ SOS Location: Error getting location update: $e');
       }
@@ -151,89 +159,64 @@ class SOSService {
       print('   Contact ${i + 1}: ${emergencyContacts[i]}');
     }
 
-    // Check user data for name (fallback to email if no name)
-    String userName = 'Emergency User';
-    if (_userData != null) {
-      userName = '${_userData!.firstName} ${_userData!.lastName}';
-      print('✅ User data found: $userName');
-    } else {
-      final userEmail = await authService.getUserEmail();
-      userName = userEmail ?? 'Emergency User';
-      print('⚠️ Using fallback user name: $userName');
-    }
+    final userName = await _senderName();
 
-    // Debug: Check location
-    if (_lastKnownLocation == null) {
-      print(
-          '❌ SOS FAILED: Location is null - Trying to get current location...');
-      try {
-        _lastKnownLocation = await Geolocator.getCurrentPosition();
+    // The native snapshot already holds the last good fix, the battery level
+    // and the rendered message, so there is nothing to wait for here
+    final snapshot = await DirectSmsService().getSosSnapshot();
+    double? latitude = snapshot['latitude'];
+    double? longitude = snapshot['longitude'];
+    int? batteryLevel = snapshot['batteryLevel'];
+    String? message = snapshot['body'];
+
+    if (latitude == null || longitude == null) {
+      if (_lastKnownLocation == null) {
         print(
-            '✅ Location obtained: ${_lastKnownLocation!.latitude}, ${_lastKnownLocation!.longitude}');
-      } catch (e) {
-        print('❌ SOS FAILED: Could not get location: $e');
-        return false;
+            '❌ SOS FAILED: Location is null - Trying to get current location...');
+        try {
+          _lastKnownLocation = await Geolocator.getCurrentPosition();
+        } catch (e) {
+          print('❌ SOS FAILED: Could not get location: $e');
+          return false;
+        }
       }
+      latitude = _lastKnownLocation!.latitude;
+      longitude = _lastKnownLocation!.longitude;
+      message = null;
+      print('✅ Location from Geolocator: $latitude, $longitude');
     } else {
       print(
-          '✅ Location available: ${_lastKnownLocation!.latitude}, ${_lastKnownLocation!.longitude}');
+          '✅ Location from snapshot: $latitude, $longitude (${snapshot['ageMs']} ms old)');
     }
 
-    if (_userData == null || _lastKnownLocation == null) {
-      print(
-          '❌ SOS FAILED: Missing required data - userData: ${_userData != null}, location: ${_lastKnownLocation != null}');
+    if (_userData == null) {
+      print('❌ SOS FAILED: Missing required data - userData: false');
       return false;
     }
 
-    final batteryLevel = await _battery.batteryLevel;
+    if (batteryLevel == null || batteryLevel < 0) {
+      batteryLevel = await _battery.batteryLevel;
+      message = null;
+    }
 
-    // Create SOS message without links (to avoid blocking from mobile carriers)
-    // while keeping coordinates and adding text description of location
-    final message = '''
-SOS! $userName needs help!
-Current coordinates: ${_lastKnownLocation!.latitude}, ${_lastKnownLocation!.longitude}
-Battery: $batteryLevel%
-IMPORTANT: Copy the coordinates and put them in Google Maps to show the actual location.
-''';
+    if (message == null || message.isEmpty) {
+      message = _renderSosMessage(userName, latitude, longitude, batteryLevel);
+    }
 
     try {
-      // Show notification in status bar only without heads-up notification
-      const androidDetails = AndroidNotificationDetails(
-        'sos_channel',
-        'SOS Alerts',
-        channelDescription: 'Important SOS alerts',
-        importance: Importance.high, // Changed from max to high
-        priority: Priority.high,
-        playSound: false, // Disable sound
-        enableVibration: false, // Disable vibration
-        fullScreenIntent: false, // Disable full screen intent
-        visibility: NotificationVisibility
-            .secret, // Show on lock screen only as a notification dot
-        onlyAlertOnce:
-            true, // Only alert the first time this notification is shown
-      );
-      const iosDetails = DarwinNotificationDetails(
-        presentAlert: false, // Don't show an alert
-        presentBadge: true, // Show a badge
-        presentSound: false, // Don't play a sound
-      );
-      const details = NotificationDetails(
-        android: androidDetails,
-        iOS: iosDetails,
-      );
-
-      // Use a static notification ID to prevent multiple notifications
-      await _notifications.show(
-        1, // Use a fixed ID to replace any existing notification
-        'SOS Service Active',
-        'Triple press power button for emergency',
-        details,
-      );
+      await _showSosActiveNotification();
 
       // Send SMS messages to all emergency contacts
       if (emergencyContacts.isNotEmpty) {
         // First try to send SMS directly
-        bool smsSent = await _sendSMS(message, emergencyContacts);
+        bool smsSent = await _sendSMS(
+          message,
+          emergencyContacts,
+          latitude: latitude,
+          longitude: longitude,
+          batteryLevel: batteryLevel,
+          senderId: userName,
+        );
 
         // If direct SMS fails, try using the default SMS app as a fallback
         if (!smsSent && emergencyContacts.isNotEmpty) {
@@ -250,7 +233,49 @@ IMPORTANT: Copy the coordinates and put them in Google Maps to show the actual l
     }
   }
 
-  Future<bool> _sendSMS(String message, List<String> emergencyContacts) async {
+  Future<void> _showSosActiveNotification() async {
+    // Show notification in status bar only without heads-up notification
+    const androidDetails = AndroidNotificationDetails(
+      'sos_channel',
+      'SOS Alerts',
+      channelDescription: 'Important SOS alerts',
+      importance: Importance.high, // Changed from max to high
+      priority: Priority.high,
+      playSound: false, // Disable sound
+      enableVibration: false, // Disable vibration
+      fullScreenIntent: false, // Disable full screen intent
+      visibility: NotificationVisibility
+          .secret, // Show on lock screen only as a notification dot
+      onlyAlertOnce:
+          true, // Only alert the first time this notification is shown
+    );
+    const iosDetails = DarwinNotificationDetails(
+      presentAlert: false, // Don't show an alert
+      presentBadge: true, // Show a badge
+      presentSound: false, // Don't play a sound
+    );
+    const details = NotificationDetails(
+      android: androidDetails,
+      iOS: iosDetails,
+    );
+
+    // Use a static notification ID to prevent multiple notifications
+    await _notifications.show(
+      1, // Use a fixed ID to replace any existing notification
+      'SOS Service Active',
+      'Triple press power button for emergency',
+      details,
+    );
+  }
+
+  Future<bool> _sendSMS(
+    String message,
+    List<String> emergencyContacts, {
+    double? latitude,
+    double? longitude,
+    int? batteryLevel,
+    String senderId = '',
+  }) async {
     try {
       // Initialize telephony and SimService
       final Telephony telephony = Telephony.instance;
@@ -282,103 +307,108 @@ IMPORTANT: Copy the coordinates and put them in Google Maps to show the actual l
         bool hasDualSim = await simService.hasDualSim();
         print('Device has dual SIM: $hasDualSim');
 
-        // Track if any SMS was sent successfully
-        bool anySmsSuccess = false;
-
-        // Send SMS to all emergency contacts with optimized timing for emergencies
+        // Format and validate all numbers up front so they can go out in one batch
+        final List<String> formattedNumbers = [];
         for (int i = 0; i < emergencyContacts.length; i++) {
           String contact = emergencyContacts[i];
           print(
               '📱 Processing contact ${i + 1}/${emergencyContacts.length}: $contact');
-          // Format phone number (remove any non-digit characters)
-          String formattedNumber = contact.replaceAll(RegExp(r'[^\d+]'), '');
-
-          // Add Egypt country code (+20) if needed for Egyptian numbers
-          if (!formattedNumber.startsWith('+')) {
-            // If number starts with 0, remove it before adding country code
-            if (formattedNumber.startsWith('0')) {
-              formattedNumber = formattedNumber.substring(1);
-            }
-
-            // Add +20 for Egyptian numbers
-            formattedNumber = '+20$formattedNumber';
-          }
+          final formattedNumber = _formatPhoneNumber(contact);
 
           // Validate phone number format
-          if (formattedNumber.isEmpty || formattedNumber.length < 10) {
+          if (formattedNumber.length < 10) {
             print('ERROR: Invalid phone number format: $formattedNumber');
             continue;
           }
 
-          // Log the phone number for debugging purposes
-          print('Sending SMS to formatted number: $formattedNumber');
-
-          bool smsSuccess = false;
+          formattedNumbers.add(formattedNumber);
+        }
 
-          // First attempt with DirectSmsService which attempts to use all available SIMs
-          try {
-            print('Attempting to send SMS with DirectSmsService...');
-            final directSmsService = DirectSmsService();
+        if (formattedNumbers.isEmpty) {
+          print('ERROR: No valid emergency contact numbers');
+          return false;
+        }
 
-            // Set up a status listener to show more detailed status in logs
-            directSmsService.onSmsStatusChanged = (SmsStatus status) {
-              if (status.success) {
-                print(
-                    'SMS status: Sent successfully to ${status.phoneNumber} using SIM ${status.simId}');
-              } else {
-                print(
-                    'SMS status: Failed to send to ${status.phoneNumber} using SIM ${status.simId}. Reason: ${status.errorReason}');
-              }
-            };
+        // Track if any SMS was sent successfully
+        bool anySmsSuccess = false;
 
-            // First attempt with DirectSmsService - EMERGENCY OPTIMIZED TIMING
-            bool directSmsSent = await directSmsService.sendDirectSms(
-              phoneNumber: formattedNumber,
+        // Send to all contacts with a single native batch call; the native side
+        // spreads the recipients across SIMs and sends them in parallel
+        try {
+          final directSmsService = DirectSmsService();
+          Map<String, bool> dataResults = {};
+
+          // Contacts known to run the app get the one-PDU binary SOS; the rest,
+          // and any that fail here, get the text message
+          final Set<String> appPeers = await _getAppPeers();
+          final List<String> dataNumbers = latitude == null || longitude == null
+              ? []
+              : formattedNumbers.where(appPeers.contains).toList();
+          if (dataNumbers.isNotEmpty) {
+            print('Sending SOS data batch to ${dataNumbers.length} app contacts...');
+            dataResults = await directSmsService.sendSosDataBatch(
+              phoneNumbers: dataNumbers,
               message: message,
-              timeout: const Duration(
-                  seconds: 30), // Reduced from 120 to 30 seconds for emergency
+              latitude: latitude!,
+              longitude: longitude!,
+              batteryLevel: batteryLevel,
+              senderId: senderId,
+              timeout: const Duration(seconds: 30),
+              payloadClass: _sosDataPayloadClass,
             );
+          }
+          final List<String> textNumbers = formattedNumbers
+              .where((number) => dataResults[number] != true)
+              .toList();
 
-            if (directSmsSent) {
-              print('SMS sent successfully with DirectSmsService');
-              smsSuccess = true;
-              anySmsSuccess = true;
-            } else {
-              print(
-                  'Failed to send SMS with DirectSmsService on first attempt');
-
-              // EMERGENCY: Reduced wait time for faster response
-              await Future.delayed(
-                  const Duration(seconds: 3)); // Reduced from 10 to 3 seconds
-
-              print('Retrying SMS with DirectSmsService...');
-              directSmsSent = await directSmsService.sendDirectSms(
-                phoneNumber: formattedNumber,
-                message: message,
-                timeout: const Duration(
-                    seconds:
-                        20), // Reduced from 120 to 20 seconds for emergency
-              );
+          print(
+              'Sending SMS batch to ${textNumbers.length} contacts with DirectSmsService...');
+          Map<String, bool> results = {...dataResults};
+          if (textNumbers.isNotEmpty) {
+            results.addAll(await directSmsService.sendDirectSmsBatch(
+              phoneNumbers: textNumbers,
+              message: message,
+              timeout: const Duration(seconds: 30),
+              payloadClass: _sosPayloadClass,
+              onRecipientStatus: (SmsStatus status) {
+                if (status.success) {
+                  print(
+                      'SMS status: Sent successfully to ${status.phoneNumber} using SIM ${status.simId}');
+                } else {
+                  print(
+                      'SMS status: Failed to send to ${status.phoneNumber} using SIM ${status.simId}. Reason: ${status.errorReason}');
+                }
+              },
+            ));
+          }
 
-              if (directSmsSent) {
-                print(
-                    'SMS sent successfully with DirectSmsService on second attempt');
-                smsSuccess = true;
-                anySmsSuccess = true;
-              } else {
-                print(
-                    'Failed to send SMS with DirectSmsService on second attempt');
-              }
-            }
+          // Retry the recipients that did not confirm, again as one batch
+          final List<String> failedNumbers = results.entries
+              .where((entry) => !entry.value)
+              .map((entry) => entry.key)
+              .toList();
+          if (failedNumbers.isNotEmpty) {
+            print('Retrying SMS batch for ${failedNumbers.length} contacts...');
+            final retryResults = await directSmsService.sendDirectSmsBatch(
+              phoneNumbers: failedNumbers,
+              message: message,
+              timeout: const Duration(seconds: 20),
+              payloadClass: _sosPayloadClass,
+            );
+            results = {...results, ...retryResults};
+          }
 
-            // Clean up the status listener
-            directSmsService.onSmsStatusChanged = null;
-          } catch (directSmsError) {
-            print('Error sending SMS with DirectSmsService: $directSmsError');
+          anySmsSuccess = results.values.any((sent) => sent);
+          print(
+              'SMS batch finished: ${results.values.where((sent) => sent).length}/${results.length} sent');
+        } catch (directSmsError) {
+          print('Error sending SMS with DirectSmsService: $directSmsError');
 
-            // Fallback to telephony package if DirectSmsService fails
+          // Fallback to telephony package if DirectSmsService fails
+          for (final formattedNumber in formattedNumbers) {
+            bool smsSuccess = false;
             try {
-              print('Falling back to telephony package...');
+              print('Falling back to telephony package for $formattedNumber...');
               await telephony.sendSms(
                 to: formattedNumber,
                 message: message,
@@ -407,12 +437,6 @@ IMPORTANT: Copy the coordinates and put them in Google Maps to show the actual l
               }
             }
           }
-
-          // Add small delay between contacts to avoid network congestion (except for last contact)
-          if (i < emergencyContacts.length - 1) {
-            print('⏱️ Waiting 2 seconds before next contact...');
-            await Future.delayed(const Duration(seconds: 2));
-          }
         }
 
         // Return true if at least one SMS was sent successfully
@@ -429,25 +453,171 @@ IMPORTANT: Copy the coordinates and put them in Google Maps to show the actual l
     }
   }
 
+  static const String _appPeersKey = 'sosAppPeers';
+
+  // Every trigger of the same alert (power button, accessibility service,
+  // background service) is coalesced natively per contact by these classes,
+  // even though battery and coordinates in the text may differ slightly
+  static const String _sosPayloadClass = 'sos';
+  static const String _sosDataPayloadClass = 'sos-data';
+
+  // SOS message without links (to avoid blocking from mobile carriers) while
+  // keeping coordinates; shared with the native executor, which fills it in
+  // itself when it sends without Dart
+  static const String _sosMessageTemplate = '''
+SOS! {name} needs help!
+Current coordinates: {latitude}, {longitude}
+Battery: {battery}%
+IMPORTANT: Copy the coordinates and put them in Google Maps to show the actual location.
+''';
+
+  static String _renderSosMessage(
+      String name, double latitude, double longitude, int batteryLevel) {
+    return _sosMessageTemplate
+        .replaceAll('{name}', name)
+        .replaceAll('{latitude}', '$latitude')
+        .replaceAll('{longitude}', '$longitude')
+        .replaceAll('{battery}', '$batteryLevel');
+  }
+
+  // User name from the SOS profile, falling back to the account email
+  Future<String> _senderName() async {
+    if (_userData != null) {
+      return '${_userData!.firstName} ${_userData!.lastName}';
+    }
+    final userEmail = await AuthService().getUserEmail();
+    return userEmail ?? 'Emergency User';
+  }
+
+  /// Stages the contacts, app contacts, sender name and message template with
+  /// the native SOS executor, so a triple press sends the alert natively
+  /// without waiting for (or needing) the Flutter engine.
+  Future<void> stageNativeSos() async {
+    try {
+      final contacts = await AuthService().getEmergencyContacts();
+      final formattedNumbers = contacts
+          .map(_formatPhoneNumber)
+          .where((number) => number.length >= 10)
+          .toList();
+      final appPeers = await _getAppPeers();
+      await DirectSmsService().stageSosProfile(
+        contacts: formattedNumbers,
+        appPeers: appPeers.where(formattedNumbers.contains).toList(),
+        senderName: await _senderName(),
+        messageTemplate: _sosMessageTemplate,
+      );
+      await _stageNativeLocation();
+    } catch (e) {
+      print('❌ SOS: Error staging native SOS profile: $e');
+    }
+  }
+
+  Future<void> _stageNativeLocation() async {
+    final location = _lastKnownLocation;
+    if (location == null) return;
+    await DirectSmsService().stageSosLocation(
+      latitude: location.latitude,
+      longitude: location.longitude,
+      accuracy: location.accuracy,
+      timestamp: location.timestamp,
+    );
+  }
+
+  /// Called after the native executor has already sent an SOS, for the UI.
+  Future<void> onNativeSosDispatched(Map<dynamic, dynamic> summary) async {
+    final List<dynamic> recipients = summary['recipients'] ?? [];
+    print(
+        '🚨 SOS sent natively (${summary['source']}) to ${recipients.length} contacts');
+    await _showSosActiveNotification();
+  }
+
+  Future<Set<String>> _getAppPeers() async {
+    final prefs = await SharedPreferences.getInstance();
+    return (prefs.getStringList(_appPeersKey) ?? []).toSet();
+  }
+
+  /// Whether the user said [contact] also runs the app.
+  Future<bool> isAppContact(String contact) async {
+    return (await _getAppPeers()).contains(_formatPhoneNumber(contact));
+  }
+
+  /// Emergency contacts the user opted in as running the app; future SOS
+  /// messages to them go out as a one-PDU binary data SMS, with the text
+  /// message as fallback. Replaces the previous selection.
+  Future<void> setAppContacts(List<String> contacts) async {
+    final prefs = await SharedPreferences.getInstance();
+    await prefs.setStringList(
+        _appPeersKey, contacts.map(_formatPhoneNumber).toSet().toList());
+    await stageNativeSos();
+  }
+
+  Future<void> _markAppPeer(String phoneNumber) async {
+    final peers = await _getAppPeers();
+    if (peers.add(phoneNumber)) {
+      final prefs = await SharedPreferences.getInstance();
+      await prefs.setStringList(_appPeersKey, peers.toList());
+      await stageNativeSos();
+    }
+  }
+
+  Future<bool> _isEmergencyContact(String phoneNumber) async {
+    final contacts = await AuthService().getEmergencyContacts();
+    return contacts
+        .map(_formatPhoneNumber)
+        .contains(_formatPhoneNumber(phoneNumber));
+  }
+
+  Future<void> _onSosDataReceived(SosDataMessage sos) async {
+    print(
+        '🚨 SOS data received from ${sos.address}: ${sos.latitude}, ${sos.longitude}');
+    // Only the app sends data SMS to this port, so a sender that is already
+    // one of our emergency contacts runs it too; anyone else is not added
+    if (sos.address != null && await _isEmergencyContact(sos.address!)) {
+      await _markAppPeer(_formatPhoneNumber(sos.address!));
+    }
+
+    // Shown natively when it arrived in background
+    if (sos.notified) return;
+
+    const androidDetails = AndroidNotificationDetails(
+      'sos_channel',
+      'SOS Alerts',
+      channelDescription: 'Important SOS alerts',
+      importance: Importance.high,
+      priority: Priority.high,
+    );
+    await _notifications.show(
+      2,
+      'SOS from ${sos.address ?? 'unknown number'}',
+      sos.body ?? 'Current coordinates: ${sos.latitude}, ${sos.longitude}',
+      const NotificationDetails(android: androidDetails),
+    );
+  }
+
+  static String _formatPhoneNumber(String contact) {
+    // Format phone number (remove any non-digit characters)
+    String formattedNumber = contact.replaceAll(RegExp(r'[^\d+]'), '');
+
+    // Add Egypt country code (+20) if needed for Egyptian numbers
+    if (!formattedNumber.startsWith('+')) {
+      // If number starts with 0, remove it before adding country code
+      if (formattedNumber.startsWith('0')) {
+        formattedNumber = formattedNumber.substring(1);
+      }
+
+      // Add +20 for Egyptian numbers
+      formattedNumber = '+20$formattedNumber';
+    }
+    return formattedNumber;
+  }
+
   // Send SMS using the default SMS app as a fallback
   Future<void> _sendSMSViaDefaultApp(String contact, String message) async {
     try {
       // Initialize telephony
       final Telephony telephony = Telephony.instance;
 
-      // Format phone number (remove any non-digit characters)
-      String formattedNumber = contact.replaceAll(RegExp(r'[^\d+]'), '');
-
-      // Add Egypt country code (+20) if needed for Egyptian numbers
-      if (!formattedNumber.startsWith('+')) {
-        // If number starts with 0, remove it before adding country code
-        if (formattedNumber.startsWith('0')) {
-          formattedNumber = formattedNumber.substring(1);
-        }
-
-        // Add +20 for Egyptian numbers
-        formattedNumber = '+20$formattedNumber';
-      }
+      final formattedNumber = _formatPhoneNumber(contact);
 
       print('Opening SMS app with number: $formattedNumber');
 
@@ -467,6 +637,7 @@ IMPORTANT: Copy the coordinates and put them in Google Maps to show the actual l
 
     // Sync emergency contacts with AuthService
     await syncEmergencyContactsToAuth();
+    await stageNativeSos();
   }
 
   /// جلب بيانات المستخدم المحفوظة
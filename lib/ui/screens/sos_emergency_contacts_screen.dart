@@ -28,6 +28,8 @@ class _SOSEmergencyContactsScreenState
     TextEditingController(),
     TextEditingController(),
   ];
+  // Contacts the user says also run the app, so they get the compact data SOS
+  final List<bool> _appContacts = [false, false, false];
 
   bool _isLoading = true;
 
@@ -56,6 +58,8 @@ class _SOSEmergencyContactsScreenState
                 i < _contactControllers.length;
             i++) {
           _contactControllers[i].text = savedData.emergencyContacts[i];
+          _appContacts[i] =
+              await sosService.isAppContact(savedData.emergencyContacts[i]);
         }
 
         debugPrint('✅ SOS Emergency Contacts: Loaded saved data successfully');
@@ -165,8 +169,11 @@ class _SOSEmergencyContactsScreenState
       for (var controller in _contactControllers) {
         controller.clear();
       }
+      _appContacts.fillRange(0, _appContacts.length, false);
+      await SOSService().setAppContacts([]);
 
       if (mounted) {
+        setState(() {});
         ScaffoldMessenger.of(context).showSnackBar(
           SnackBar(
             content: Text(Localizations.localeOf(context).languageCode == 'ar'
@@ -206,6 +213,15 @@ class _SOSEmergencyContactsScreenState
         );
 
         await SOSService().setUserData(userData);
+        await SOSService().setAppContacts([
+          for (int i = 0; i < _contactControllers.length; i++)
+            if (_appContacts[i] &&
+                _contactControllers[i].text.trim().isNotEmpty)
+              _contactControllers[i]
+                  .text
+                  .trim()
+                  .replaceAll(RegExp(r'[^0-9]'), ''),
+        ]);
 
         if (mounted) {
           ScaffoldMessenger.of(context).showSnackBar(
@@ -450,50 +466,79 @@ class _SOSEmergencyContactsScreenState
                   ...List.generate(3, (index) {
                     return Padding(
                       padding: const EdgeInsets.only(bottom: 20.0),
-                      child: _buildTextField(
-                        controller: _contactControllers[index],
-                        label:
-                            Localizations.localeOf(context).languageCode == 'ar'
-                                ? 'جهة الاتصال الطارئة ${index + 1}'
-                                : 'Emergency Contact ${index + 1}',
-                        hintText:
-                            Localizations.localeOf(context).languageCode == 'ar'
-                                ? 'أدخل رقم الهاتف'
-                                : 'Enter phone number',
-                        keyboardType: TextInputType.phone,
-                        validator: (value) {
-                          if (index == 0 && (value == null || value.isEmpty)) {
-                            return Localizations.localeOf(context)
-                                        .languageCode ==
-                                    'ar'
-                                ? 'يرجى إدخال جهة اتصال طارئة واحدة على الأقل'
-                                : 'Please enter at least one emergency contact';
-                          }
-                          if (value != null && value.isNotEmpty) {
-                            // Remove any spaces or special characters and keep only digits
-                            final digitsOnly =
-                                value.replaceAll(RegExp(r'[^0-9]'), '');
-                            if (digitsOnly.length != 11) {
-                              return Localizations.localeOf(context)
-                                          .languageCode ==
+                      child: Column(
+                        children: [
+                          _buildTextField(
+                            controller: _contactControllers[index],
+                            label:
+                                Localizations.localeOf(context).languageCode == 'ar'
+                                    ? 'جهة الاتصال الطارئة ${index + 1}'
+                                    : 'Emergency Contact ${index + 1}',
+                            hintText:
+                                Localizations.localeOf(context).languageCode == 'ar'
+                                    ? 'أدخل رقم الهاتف'
+                                    : 'Enter phone number',
+                            keyboardType: TextInputType.phone,
+                            validator: (value) {
+                              if (index == 0 && (value == null || value.isEmpty)) {
+                                return Localizations.localeOf(context)
+                                            .languageCode ==
+                                        'ar'
+                                    ? 'يرجى إدخال جهة اتصال طارئة واحدة على الأقل'
+                                    : 'Please enter at least one emergency contact';
+                              }
+                              if (value != null && value.isNotEmpty) {
+                                // Remove any spaces or special characters and keep only digits
+                                final digitsOnly =
+                                    value.replaceAll(RegExp(r'[^0-9]'), '');
+                                if (digitsOnly.length != 11) {
+                                  return Localizations.localeOf(context)
+                                              .languageCode ==
+                                          'ar'
+                                      ? 'يجب أن يكون رقم الهاتف 11 رقماً بالضبط'
+                                      : 'Phone number must be exactly 11 digits';
+                                }
+                                // Check if it starts with valid Egyptian mobile prefixes
+                                if (!digitsOnly.startsWith('010') &&
+                                    !digitsOnly.startsWith('011') &&
+                                    !digitsOnly.startsWith('012') &&
+                                    !digitsOnly.startsWith('015')) {
+                                  return Localizations.localeOf(context)
+                                              .languageCode ==
+                                          'ar'
+                                      ? 'يجب أن يبدأ رقم الهاتف بـ 010 أو 011 أو 012 أو 015'
+                                      : 'Phone number must start with 010, 011, 012, or 015';
+                                }
+                              }
+                              return null;
+                            },
+                          ),
+                          CheckboxListTile(
+                            value: _appContacts[index],
+                            onChanged: (value) {
+                              setState(() {
+                                _appContacts[index] = value ?? false;
+                              });
+                            },
+                            controlAffinity: ListTileControlAffinity.leading,
+                            contentPadding: EdgeInsets.zero,
+                            dense: true,
+                            title: Text(
+                              Localizations.localeOf(context).languageCode ==
                                       'ar'
-                                  ? 'يجب أن يكون رقم الهاتف 11 رقماً بالضبط'
-                                  : 'Phone number must be exactly 11 digits';
-                            }
-                            // Check if it starts with valid Egyptian mobile prefixes
-                            if (!digitsOnly.startsWith('010') &&
-                                !digitsOnly.startsWith('011') &&
-                                !digitsOnly.startsWith('012') &&
-                                !digitsOnly.startsWith('015')) {
-                              return Localizations.localeOf(context)
-                                          .languageCode ==
-                                      'ar'
-                                  ? 'يجب أن يبدأ رقم الهاتف بـ 010 أو 011 أو 012 أو 015'
-                                  : 'Phone number must start with 010, 011, 012, or 015';
-                            }
-                          }
-                          return null;
-                        },
+                                  ? 'يستخدم هذا الشخص تطبيق Road Helper أيضاً'
+                                  : 'This contact also uses Road Helper',
+                              style: ArabicFontHelper.getTajawalTextStyle(
+                                context,
+                                fontSize: 14,
+                                fontWeight: FontWeight.w400,
+                                color: isLight
+                                    ? const Color(0xFF47609A)
+                                    : Colors.white70,
+                              ),
+                            ),
+                          ),
+                        ],
                       ),
                     );
                   }),
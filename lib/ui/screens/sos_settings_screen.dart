@@ -3,6 +3,7 @@ import 'package:shared_preferences/shared_preferences.dart';
 import '../../utils/app_colors.dart';
 import '../../utils/arabic_font_helper.dart';
 import '../../services/accessibility_service.dart';
+import '../../services/power_button_detector.dart';
 import '../../services/sos_permission_service.dart';
 import '../../ui/widgets/sos_permission_status_widget.dart';
 import 'sos_emergency_contacts_screen.dart';
@@ -62,6 +63,10 @@ class _SOSSettingsScreenState extends State<SOSSettingsScreen> {
     final prefs = await SharedPreferences.getInstance();
     await prefs.setBool('sos_power_button_enabled', _powerButtonEnabled);
     await prefs.setBool('sos_service_enabled', _sosServiceEnabled);
+    await AccessibilityService.setSosArmed(
+        _sosServiceEnabled && _powerButtonEnabled);
+    await PowerButtonDetector()
+        .setSosServiceEnabled(_sosServiceEnabled && _powerButtonEnabled);
   }
 
   @override
@@ -67,6 +67,7 @@ class TelephonyPlugin : FlutterPlugin, ActivityAware {
 
   private fun tearDownPlugin() {
     IncomingSmsReceiver.foregroundSmsChannel = null
+    smsMethodCallHandler.unregisterStatusReceiver()
     smsChannel.setMethodCallHandler(null)
   }
 
@@ -2,27 +2,39 @@ package com.shounakmulay.telephony.sms
 
 import android.app.ActivityManager
 import android.app.KeyguardManager
+import android.app.Notification
+import android.app.NotificationChannel
+import android.app.NotificationManager
+import android.app.PendingIntent
 import android.content.BroadcastReceiver
 import android.content.Context
 import android.content.Intent
+import android.os.Build
 import android.os.Process
 import android.provider.Telephony
 import android.telephony.SmsMessage
+import android.util.Log
 import com.shounakmulay.telephony.utils.Constants
+import com.shounakmulay.telephony.utils.Constants.ACTION_DATA_SMS_RECEIVED
 import com.shounakmulay.telephony.utils.Constants.HANDLE
 import com.shounakmulay.telephony.utils.Constants.HANDLE_BACKGROUND_MESSAGE
 import com.shounakmulay.telephony.utils.Constants.MESSAGE
 import com.shounakmulay.telephony.utils.Constants.MESSAGE_BODY
+import com.shounakmulay.telephony.utils.Constants.NOTIFIED
 import com.shounakmulay.telephony.utils.Constants.ON_MESSAGE
+import com.shounakmulay.telephony.utils.Constants.ON_SOS_DATA
 import com.shounakmulay.telephony.utils.Constants.ORIGINATING_ADDRESS
 import com.shounakmulay.telephony.utils.Constants.SERVICE_CENTER_ADDRESS
 import com.shounakmulay.telephony.utils.Constants.SHARED_PREFERENCES_NAME
 import com.shounakmulay.telephony.utils.Constants.SHARED_PREFS_BACKGROUND_MESSAGE_HANDLE
 import com.shounakmulay.telephony.utils.Constants.SHARED_PREFS_BACKGROUND_SETUP_HANDLE
 import com.shounakmulay.telephony.utils.Constants.SHARED_PREFS_DISABLE_BACKGROUND_EXE
+import com.shounakmulay.telephony.utils.Constants.SHARED_PREFS_PENDING_SOS_DATA
+import com.shounakmulay.telephony.utils.Constants.SOS_DATA
 import com.shounakmulay.telephony.utils.Constants.STATUS
 import com.shounakmulay.telephony.utils.Constants.TIMESTAMP
 import com.shounakmulay.telephony.utils.SmsAction
+import com.shounakmulay.telephony.utils.SosDataCodec
 import io.flutter.FlutterInjector
 import io.flutter.embedding.engine.FlutterEngine
 import io.flutter.embedding.engine.FlutterJNI
@@ -31,6 +43,8 @@ import io.flutter.embedding.engine.loader.FlutterLoader
 import io.flutter.plugin.common.MethodCall
 import io.flutter.plugin.common.MethodChannel
 import io.flutter.view.FlutterCallbackInformation
+import org.json.JSONArray
+import org.json.JSONObject
 import java.util.*
 import java.util.concurrent.atomic.AtomicBoolean
 import kotlin.collections.HashMap
@@ -39,12 +53,19 @@ import kotlin.collections.HashMap
 class IncomingSmsReceiver : BroadcastReceiver() {
 
     companion object {
+        private const val TAG = "IncomingSmsReceiver"
+
         var foregroundSmsChannel: MethodChannel? = null
     }
 
     override fun onReceive(context: Context, intent: Intent?) {
         ContextHolder.applicationContext = context.applicationContext
         val smsList = Telephony.Sms.Intents.getMessagesFromIntent(intent)
+        if (intent?.action == ACTION_DATA_SMS_RECEIVED) {
+            // Binary SOS payloads fit one PDU, so every message is decoded on its own
+            smsList.forEach { processIncomingSosData(context, it) }
+            return
+        }
         val messagesGroupedByOriginatingAddress = smsList.groupBy { it.originatingAddress }
         messagesGroupedByOriginatingAddress.forEach { group ->
             processIncomingSms(context, group.value)
@@ -69,10 +90,38 @@ class IncomingSmsReceiver : BroadcastReceiver() {
                     .plus(smsMessage.messageBody.trim())
             }
         }
+        deliver(context, ON_MESSAGE, messageMap)
+    }
+
+    /**
+     * Decodes a data SMS sent by [SosDataCodec] and calls [ON_SOS_DATA] on the Foreground Channel.
+     *
+     * In the background it does not depend on a Dart background handler being registered: the SOS
+     * is shown as a notification right away and kept in [IncomingSosStore] until the app takes it.
+     */
+    private fun processIncomingSosData(context: Context, smsMessage: SmsMessage) {
+        val sosData = SosDataCodec.decode(smsMessage.userData)
+        if (sosData == null) {
+            Log.d(TAG, "Ignoring data SMS that is not a valid SOS payload")
+            return
+        }
+        val messageMap = smsMessage.toMap()
+        messageMap[MESSAGE_BODY] = sosData.toText()
+        messageMap[SOS_DATA] = sosData.toMap()
+        if (IncomingSmsHandler.isApplicationForeground(context) && foregroundSmsChannel != null) {
+            val args = HashMap<String, Any>()
+            args[MESSAGE] = messageMap
+            foregroundSmsChannel?.invokeMethod(ON_SOS_DATA, args)
+        } else {
+            IncomingSosStore.add(context, messageMap)
+        }
+    }
+
+    private fun deliver(context: Context, method: String, messageMap: HashMap<String, Any?>) {
         if (IncomingSmsHandler.isApplicationForeground(context)) {
             val args = HashMap<String, Any>()
             args[MESSAGE] = messageMap
-            foregroundSmsChannel?.invokeMethod(ON_MESSAGE, args)
+            foregroundSmsChannel?.invokeMethod(method, args)
         } else {
             val preferences =
                 context.getSharedPreferences(SHARED_PREFERENCES_NAME, Context.MODE_PRIVATE)
@@ -101,6 +150,95 @@ class IncomingSmsReceiver : BroadcastReceiver() {
     }
 }
 
+/**
+ * SOS data messages that arrived while the app was not in the foreground.
+ *
+ * Each one is shown as a high priority notification when it arrives and kept until the app calls
+ * [take], so the SOS reaches the user even if no Dart code can run.
+ */
+object IncomingSosStore {
+    private const val TAG = "IncomingSosStore"
+    private const val CHANNEL_ID = "incoming_sos"
+    private const val NOTIFICATION_ID_BASE = 7100
+    // Bounds the stored backlog if a sender keeps retrying while the app is never opened
+    private const val MAX_PENDING = 20
+
+    @Synchronized
+    fun add(context: Context, message: HashMap<String, Any?>) {
+        val preferences =
+            context.getSharedPreferences(SHARED_PREFERENCES_NAME, Context.MODE_PRIVATE)
+        val pending = JSONArray(preferences.getString(SHARED_PREFS_PENDING_SOS_DATA, "[]"))
+        val stored = JSONObject(message)
+        stored.getJSONObject(SOS_DATA).put(NOTIFIED, true)
+        pending.put(stored)
+        while (pending.length() > MAX_PENDING) {
+            pending.remove(0)
+        }
+        preferences.edit().putString(SHARED_PREFS_PENDING_SOS_DATA, pending.toString()).apply()
+        notify(context, message)
+    }
+
+    /** Returns the stored SOS messages, oldest first, and forgets them. */
+    @Synchronized
+    fun take(context: Context): List<HashMap<String, Any?>> {
+        val preferences =
+            context.getSharedPreferences(SHARED_PREFERENCES_NAME, Context.MODE_PRIVATE)
+        val stored = preferences.getString(SHARED_PREFS_PENDING_SOS_DATA, null) ?: return emptyList()
+        preferences.edit().remove(SHARED_PREFS_PENDING_SOS_DATA).apply()
+        val pending = JSONArray(stored)
+        return (0 until pending.length()).map { toMap(pending.getJSONObject(it)) }
+    }
+
+    private fun notify(context: Context, message: HashMap<String, Any?>) {
+        val notificationManager =
+            context.getSystemService(Context.NOTIFICATION_SERVICE) as NotificationManager
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            notificationManager.createNotificationChannel(
+                NotificationChannel(CHANNEL_ID, "Incoming SOS", NotificationManager.IMPORTANCE_HIGH)
+            )
+        }
+        val address = message[ORIGINATING_ADDRESS] as String?
+        val body = message[MESSAGE_BODY] as String
+        val builder = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            Notification.Builder(context, CHANNEL_ID)
+        } else {
+            @Suppress("DEPRECATION")
+            Notification.Builder(context).setPriority(Notification.PRIORITY_HIGH)
+        }
+        builder
+            .setSmallIcon(context.applicationInfo.icon)
+            .setContentTitle("SOS from ${address ?: "unknown number"}")
+            .setContentText(body)
+            .setStyle(Notification.BigTextStyle().bigText(body))
+            .setCategory(Notification.CATEGORY_MESSAGE)
+            .setAutoCancel(true)
+        context.packageManager.getLaunchIntentForPackage(context.packageName)?.let {
+            builder.setContentIntent(
+                PendingIntent.getActivity(context, 0, it, PendingIntent.FLAG_IMMUTABLE)
+            )
+        }
+        try {
+            // One notification per sender, replaced by that sender's latest SOS
+            notificationManager.notify(NOTIFICATION_ID_BASE + (address.hashCode() and 0xff), builder.build())
+        } catch (e: SecurityException) {
+            Log.w(TAG, "Cannot show SOS notification: ${e.message}")
+        }
+    }
+
+    private fun toMap(json: JSONObject): HashMap<String, Any?> {
+        val map = HashMap<String, Any?>()
+        json.keys().forEach { key ->
+            val value = json.get(key)
+            map[key] = when (value) {
+                is JSONObject -> toMap(value)
+                JSONObject.NULL -> null
+                else -> value
+            }
+        }
+        return map
+    }
+}
+
 /**
  * Convert the [SmsMessage] to a [HashMap]
  */
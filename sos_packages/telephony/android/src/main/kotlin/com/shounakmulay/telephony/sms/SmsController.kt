@@ -252,14 +252,26 @@ class SmsController(private val context: Context) {
         }
     }
 
+    // The base manager and the one bound to the default SMS subscription are reused across getters;
+    // the bound one is only rebuilt when the default subscription changes.
+    private val baseTelephonyManager: TelephonyManager by lazy {
+        context.getSystemService(Context.TELEPHONY_SERVICE) as TelephonyManager
+    }
+
+    @Volatile
+    private var boundTelephonyManager: Pair<Int, TelephonyManager>? = null
+
     private fun getTelephonyManager(): TelephonyManager {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            return baseTelephonyManager
+        }
         val subscriptionId = SmsManager.getDefaultSmsSubscriptionId()
-        val telephonyManager =
-            context.getSystemService(Context.TELEPHONY_SERVICE) as TelephonyManager
-        return if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            telephonyManager.createForSubscriptionId(subscriptionId)
-        } else {
-            telephonyManager
+        val cached = boundTelephonyManager
+        if (cached != null && cached.first == subscriptionId) {
+            return cached.second
         }
+        val telephonyManager = baseTelephonyManager.createForSubscriptionId(subscriptionId)
+        boundTelephonyManager = Pair(subscriptionId, telephonyManager)
+        return telephonyManager
     }
 }
\ No newline at end of file
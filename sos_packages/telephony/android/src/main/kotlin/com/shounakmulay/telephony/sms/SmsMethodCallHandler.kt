@@ -75,6 +75,9 @@ class SmsMethodCallHandler(
 
   private var requestCode: Int = -1
 
+  // Registered on the first send that listens for status and kept until the plugin is torn down
+  private var statusReceiverRegistered = false
+
   override fun onMethodCall(call: MethodCall, result: MethodChannel.Result) {
     this.result = result
 
@@ -187,11 +190,7 @@ class SmsMethodCallHandler(
 
   private fun handleSendSmsActions(smsAction: SmsAction) {
     if (listenStatus) {
-      val intentFilter = IntentFilter().apply {
-        addAction(Constants.ACTION_SMS_SENT)
-        addAction(Constants.ACTION_SMS_DELIVERED)
-      }
-      context.applicationContext.registerReceiver(this, intentFilter)
+      registerStatusReceiver()
     }
     when (smsAction) {
       SmsAction.SEND_SMS -> smsController.sendSms(address, messageBody, listenStatus)
@@ -237,6 +236,7 @@ class SmsMethodCallHandler(
         SmsAction.GET_SIM_OPERATOR_NAME -> getSimOperatorName()
         SmsAction.GET_SIM_STATE -> getSimState()
         SmsAction.IS_NETWORK_ROAMING -> isNetworkRoaming()
+        SmsAction.TAKE_PENDING_SOS_DATA -> IncomingSosStore.take(context)
         SmsAction.GET_SIGNAL_STRENGTH -> {
           if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
             getSignalStrength()
@@ -330,6 +330,7 @@ class SmsMethodCallHandler(
       SmsAction.GET_SIM_STATE,
       SmsAction.IS_NETWORK_ROAMING,
       SmsAction.GET_SIGNAL_STRENGTH,
+      SmsAction.TAKE_PENDING_SOS_DATA,
       SmsAction.NO_SUCH_METHOD -> return true
     }
   }
@@ -383,6 +384,29 @@ class SmsMethodCallHandler(
     result.error(PERMISSION_DENIED, PERMISSION_DENIED_MESSAGE, deniedPermissions)
   }
 
+  private fun registerStatusReceiver() {
+    if (statusReceiverRegistered) {
+      return
+    }
+    val intentFilter = IntentFilter().apply {
+      addAction(Constants.ACTION_SMS_SENT)
+      addAction(Constants.ACTION_SMS_DELIVERED)
+    }
+    if (Build.VERSION.SDK_INT >= 33) {
+      context.applicationContext.registerReceiver(this, intentFilter, Constants.RECEIVER_NOT_EXPORTED)
+    } else {
+      context.applicationContext.registerReceiver(this, intentFilter)
+    }
+    statusReceiverRegistered = true
+  }
+
+  fun unregisterStatusReceiver() {
+    if (statusReceiverRegistered) {
+      context.applicationContext.unregisterReceiver(this)
+      statusReceiverRegistered = false
+    }
+  }
+
   fun setForegroundChannel(channel: MethodChannel) {
     foregroundChannel = channel
   }
@@ -391,10 +415,7 @@ class SmsMethodCallHandler(
     if (intent != null) {
       when (intent.action) {
         Constants.ACTION_SMS_SENT -> foregroundChannel.invokeMethod(SMS_SENT, null)
-        Constants.ACTION_SMS_DELIVERED -> {
-          foregroundChannel.invokeMethod(SMS_DELIVERED, null)
-          context.unregisterReceiver(this)
-        }
+        Constants.ACTION_SMS_DELIVERED -> foregroundChannel.invokeMethod(SMS_DELIVERED, null)
       }
     }
   }
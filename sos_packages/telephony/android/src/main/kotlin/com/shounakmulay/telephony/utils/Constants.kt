@@ -12,6 +12,10 @@ object Constants {
   // Intent Actions
   const val ACTION_SMS_SENT = "plugins.shounakmulay.intent.ACTION_SMS_SENT"
   const val ACTION_SMS_DELIVERED = "plugins.shounakmulay.intent.ACTION_SMS_DELIVERED"
+  const val ACTION_DATA_SMS_RECEIVED = "android.intent.action.DATA_SMS_RECEIVED"
+
+  // Context.RECEIVER_NOT_EXPORTED, which is newer than this module's compileSdk
+  const val RECEIVER_NOT_EXPORTED = 0x4
 
 
 
@@ -32,6 +36,7 @@ object Constants {
 
   // Methods
   const val ON_MESSAGE = "onMessage"
+  const val ON_SOS_DATA = "onSosData"
   const val HANDLE_BACKGROUND_MESSAGE = "handleBackgroundMessage"
   const val SMS_SENT = "smsSent"
   const val SMS_DELIVERED = "smsDelivered"
@@ -54,6 +59,15 @@ object Constants {
   const val ORIGINATING_ADDRESS = "originating_address"
   const val STATUS = "status"
 
+  // SOS data SMS fields, see SosDataCodec
+  const val SOS_DATA = "sos_data"
+  const val LATITUDE = "latitude"
+  const val LONGITUDE = "longitude"
+  const val BATTERY_PERCENT = "battery_percent"
+  const val SOS_TIMESTAMP = "sos_timestamp"
+  const val SENDER_ID_HASH = "sender_id_hash"
+  const val NOTIFIED = "notified"
+
   const val SETUP_HANDLE = "setupHandle"
   const val BACKGROUND_HANDLE = "backgroundHandle"
 
@@ -80,5 +94,6 @@ object Constants {
   const val SHARED_PREFS_BACKGROUND_SETUP_HANDLE = "background_setup_handle"
   const val SHARED_PREFS_BACKGROUND_MESSAGE_HANDLE = "background_message_handle"
   const val SHARED_PREFS_DISABLE_BACKGROUND_EXE = "disable_background"
+  const val SHARED_PREFS_PENDING_SOS_DATA = "pending_sos_data"
 
 }
\ No newline at end of file
@@ -33,6 +33,7 @@ enum class SmsAction(private val methodName: String) {
   REQUEST_PHONE_AND_SMS_PERMISSIONS("requestPhoneAndSmsPermissions"),
   OPEN_DIALER("openDialer"),
   DIAL_PHONE_NUMBER("dialPhoneNumber"),
+  TAKE_PENDING_SOS_DATA("takePendingSosData"),
   NO_SUCH_METHOD("noSuchMethod");
 
   companion object {
@@ -72,7 +73,8 @@ enum class SmsAction(private val methodName: String) {
       GET_SIM_STATE,
       GET_SERVICE_STATE,
       GET_SIGNAL_STRENGTH,
-      IS_NETWORK_ROAMING -> ActionType.GET
+      IS_NETWORK_ROAMING,
+      TAKE_PENDING_SOS_DATA -> ActionType.GET
       REQUEST_SMS_PERMISSIONS,
       REQUEST_PHONE_PERMISSIONS,
       REQUEST_PHONE_AND_SMS_PERMISSIONS -> ActionType.PERMISSION
@@ -0,0 +1,125 @@
+package com.shounakmulay.telephony.utils
+
+import java.nio.ByteBuffer
+import java.util.zip.CRC32
+
+/**
+ * Binary SOS payload exchanged between two installs of the app as a data SMS on [PORT].
+ *
+ * Version 1 is 23 bytes, big-endian, so it always fits a single PDU:
+ *
+ * | Offset | Size | Field                                   |
+ * |--------|------|-----------------------------------------|
+ * | 0      | 1    | version                                 |
+ * | 1      | 1    | flags ([FLAG_SOS])                      |
+ * | 2      | 4    | latitude, degrees * 1e7                 |
+ * | 6      | 4    | longitude, degrees * 1e7                |
+ * | 10     | 1    | battery percent, 0xFF if unknown        |
+ * | 11     | 4    | timestamp, unsigned seconds since epoch |
+ * | 15     | 4    | sender id hash ([senderIdHash])         |
+ * | 19     | 4    | CRC32 of bytes 0-18                     |
+ */
+object SosDataCodec {
+
+  const val PORT: Short = 7412
+  const val VERSION = 1
+  const val PAYLOAD_SIZE = 23
+  const val FLAG_SOS = 0x01
+  const val BATTERY_UNKNOWN = -1
+
+  private const val CRC_OFFSET = 19
+  private const val FIXED_POINT_SCALE = 1e7
+
+  data class SosData(
+      val latitude: Double,
+      val longitude: Double,
+      val batteryPercent: Int,
+      val timestampMillis: Long,
+      val senderIdHash: Int,
+      val flags: Int
+  ) {
+
+    fun toMap(): HashMap<String, Any?> {
+      val map = HashMap<String, Any?>()
+      map[Constants.LATITUDE] = latitude
+      map[Constants.LONGITUDE] = longitude
+      map[Constants.BATTERY_PERCENT] = batteryPercent
+      map[Constants.SOS_TIMESTAMP] = timestampMillis
+      map[Constants.SENDER_ID_HASH] = senderIdHash
+      return map
+    }
+
+    /** Same wording as the text SOS, for handlers that only look at the message body. */
+    fun toText(): String {
+      val battery = if (batteryPercent == BATTERY_UNKNOWN) "unknown" else "$batteryPercent%"
+      return "SOS! Current coordinates: $latitude, $longitude\nBattery: $battery"
+    }
+  }
+
+  @JvmStatic
+  fun encode(
+      latitude: Double,
+      longitude: Double,
+      batteryPercent: Int,
+      timestampMillis: Long,
+      senderIdHash: Int
+  ): ByteArray {
+    val buffer = ByteBuffer.allocate(PAYLOAD_SIZE)
+    buffer.put(VERSION.toByte())
+    buffer.put(FLAG_SOS.toByte())
+    buffer.putInt(Math.round(latitude * FIXED_POINT_SCALE).toInt())
+    buffer.putInt(Math.round(longitude * FIXED_POINT_SCALE).toInt())
+    buffer.put(if (batteryPercent in 0..100) batteryPercent.toByte() else 0xFF.toByte())
+    buffer.putInt((timestampMillis / 1000).toInt())
+    buffer.putInt(senderIdHash)
+    buffer.putInt(crc(buffer.array()).toInt())
+    return buffer.array()
+  }
+
+  /** Returns null for anything that is not an intact payload of a version this build reads. */
+  @JvmStatic
+  fun decode(payload: ByteArray?): SosData? {
+    if (payload == null || payload.size != PAYLOAD_SIZE) {
+      return null
+    }
+    val buffer = ByteBuffer.wrap(payload)
+    if (buffer.getInt(CRC_OFFSET) != crc(payload).toInt()) {
+      return null
+    }
+    val version = buffer.get().toInt() and 0xFF
+    if (version != VERSION) {
+      return null
+    }
+    val flags = buffer.get().toInt() and 0xFF
+    val latitude = buffer.getInt() / FIXED_POINT_SCALE
+    val longitude = buffer.getInt() / FIXED_POINT_SCALE
+    val battery = buffer.get().toInt() and 0xFF
+    val timestampSeconds = buffer.getInt().toLong() and 0xFFFFFFFFL
+    val senderIdHash = buffer.getInt()
+    return SosData(
+        latitude,
+        longitude,
+        if (battery > 100) BATTERY_UNKNOWN else battery,
+        timestampSeconds * 1000,
+        senderIdHash,
+        flags
+    )
+  }
+
+  /** 32-bit FNV-1a of the sender id, enough for a recipient to tell known senders apart. */
+  @JvmStatic
+  fun senderIdHash(senderId: String): Int {
+    var hash = 0x811C9DC5.toInt()
+    for (byte in senderId.toByteArray(Charsets.UTF_8)) {
+      hash = hash xor (byte.toInt() and 0xFF)
+      hash *= 0x01000193
+    }
+    return hash
+  }
+
+  private fun crc(payload: ByteArray): Long {
+    val crc32 = CRC32()
+    crc32.update(payload, 0, CRC_OFFSET)
+    return crc32.value
+  }
+}
@@ -31,8 +31,10 @@ const REQUEST_PHONE_PERMISSION = "requestPhonePermissions";
 const REQUEST_PHONE_AND_SMS_PERMISSION = "requestPhoneAndSmsPermissions";
 const OPEN_DIALER = "openDialer";
 const DIAL_PHONE_NUMBER = "dialPhoneNumber";
+const TAKE_PENDING_SOS_DATA = "takePendingSosData";
 
 const ON_MESSAGE = "onMessage";
+const ON_SOS_DATA = "onSosData";
 const SMS_SENT = "smsSent";
 const SMS_DELIVERED = "smsDelivered";
 
@@ -89,6 +91,19 @@ class _ConversationProjections {
   static const String MSG_COUNT = "msg_count";
 }
 
+///
+/// Fields of a decoded SOS data message.
+const SOS_DATA = "sos_data";
+
+class _SosDataFields {
+  static const String LATITUDE = "latitude";
+  static const String LONGITUDE = "longitude";
+  static const String BATTERY_PERCENT = "battery_percent";
+  static const String TIMESTAMP = "sos_timestamp";
+  static const String SENDER_ID_HASH = "sender_id_hash";
+  static const String NOTIFIED = "notified";
+}
+
 abstract class _TelephonyColumn {
   const _TelephonyColumn();
 
@@ -11,6 +11,7 @@ part 'filter.dart';
 
 typedef MessageHandler(SmsMessage message);
 typedef SmsSendStatusListener(SendStatus status);
+typedef SosDataHandler(SosDataMessage message);
 
 void _flutterSmsSetupBackgroundChannel(
     {MethodChannel backgroundChannel =
@@ -55,6 +56,7 @@ class Telephony {
   late MessageHandler _onNewMessage;
   late MessageHandler _onBackgroundMessages;
   late SmsSendStatusListener _statusListener;
+  SosDataHandler? _onSosData;
 
   ///
   /// Gets a singleton instance of the [Telephony] class.
@@ -138,6 +140,24 @@ class Telephony {
     }
   }
 
+  ///
+  /// Listens to binary SOS data messages sent by another install of the app.
+  ///
+  /// ### Requires RECEIVE_SMS permission.
+  ///
+  /// [onSosData] is called when the app is in foreground. In background the plugin shows the SOS
+  /// as a notification itself and keeps it; those are passed to [onSosData] here, with
+  /// [SosDataMessage.notified] set, once this is called again after the app starts.
+  ///
+  void listenIncomingSosData({required SosDataHandler onSosData}) {
+    assert(_platform.isAndroid == true, "Can only be called on Android.");
+    _onSosData = onSosData;
+    _foregroundChannel
+        .invokeMethod<List?>(TAKE_PENDING_SOS_DATA)
+        .then((pending) => pending?.forEach(
+            (message) => onSosData(SosDataMessage.fromMap(message))));
+  }
+
   /// ## Do not call this method. This method is visible only for testing.
   @visibleForTesting
   Future<dynamic> handler(MethodCall call) async {
@@ -145,6 +165,9 @@ class Telephony {
       case ON_MESSAGE:
         final message = call.arguments["message"];
         return _onNewMessage(SmsMessage.fromMap(message, INCOMING_SMS_COLUMNS));
+      case ON_SOS_DATA:
+        final message = call.arguments["message"];
+        return _onSosData?.call(SosDataMessage.fromMap(message));
       case SMS_SENT:
         return _statusListener(SendStatus.SENT);
       case SMS_DELIVERED:
@@ -663,6 +686,43 @@ class SmsMessage {
   }
 }
 
+///
+/// A decoded binary SOS data message, see [Telephony.listenIncomingSosData].
+class SosDataMessage {
+  String? address;
+  late double latitude;
+  late double longitude;
+
+  /// Battery percent of the sender, or null if it was unknown.
+  int? batteryPercent;
+  late DateTime timestamp;
+  late int senderIdHash;
+
+  /// The SOS rendered as text, as passed to background handlers.
+  String? body;
+
+  /// True if it arrived in background and the plugin already showed a notification for it.
+  late bool notified;
+
+  /// ## Do not call this method. This method is visible only for testing.
+  @visibleForTesting
+  SosDataMessage.fromMap(Map rawMessage) {
+    final message = Map.castFrom<dynamic, dynamic, String, dynamic>(rawMessage);
+    final data =
+        Map.castFrom<dynamic, dynamic, String, dynamic>(message[SOS_DATA]);
+    this.address = message[_SmsProjections.ORIGINATING_ADDRESS];
+    this.body = message[_SmsProjections.MESSAGE_BODY];
+    this.latitude = (data[_SosDataFields.LATITUDE] as num).toDouble();
+    this.longitude = (data[_SosDataFields.LONGITUDE] as num).toDouble();
+    final int battery = data[_SosDataFields.BATTERY_PERCENT];
+    this.batteryPercent = battery < 0 ? null : battery;
+    this.timestamp =
+        DateTime.fromMillisecondsSinceEpoch(data[_SosDataFields.TIMESTAMP]);
+    this.senderIdHash = data[_SosDataFields.SENDER_ID_HASH];
+    this.notified = data[_SosDataFields.NOTIFIED] ?? false;
+  }
+}
+
 ///
 /// Represents a conversation returned by the query conversation functions
 /// [getConversations]